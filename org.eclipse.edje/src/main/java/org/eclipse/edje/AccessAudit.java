@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+
+/**
+ * A fixed-size ring of the last {@link AccessDecision} taken by
+ * {@link Authorization#check(Permission)}, installed with
+ * {@link Authorization#setAudit(AccessAudit)}.
+ * <p>
+ * Recording a decision only locks to take its sequence number: the decision
+ * is then stored in its slot, overwriting the oldest one. The decisions are
+ * read by {@link #drain(AccessDecision[])}, for instance periodically by a
+ * logging thread, which never blocks the recording threads. When the ring is
+ * not drained fast enough, the overwritten decisions are counted as lost.
+ * <p>
+ * Only the accesses are recorded: a listing records the check of each
+ * peripheral it reads, not the probe of the registered class it takes to
+ * decide whether the peripherals must be checked one by one.
+ */
+public final class AccessAudit {
+
+	/**
+	 * The recorded decisions, at the index of their sequence number modulo the
+	 * length. Also the lock of the readers.
+	 */
+	private final AccessDecision[] decisions;
+
+	/**
+	 * <code>true</code> if the granted accesses are not recorded.
+	 */
+	private final boolean deniedOnly;
+
+	/**
+	 * Sequence number of the next recorded decision. Guarded by
+	 * <code>this</code>.
+	 */
+	private long nextSequence;
+
+	/**
+	 * Sequence number of the next decision to drain. Guarded by
+	 * {@link #decisions}.
+	 */
+	private long drainSequence;
+
+	/**
+	 * Number of decisions overwritten before being drained. Guarded by
+	 * {@link #decisions}.
+	 */
+	private long lostCount;
+
+	/**
+	 * Creates an audit of the given number of decisions.
+	 *
+	 * @param size
+	 *            the number of decisions kept until they are drained
+	 * @param deniedOnly
+	 *            <code>true</code> to record only the denied accesses
+	 * @throws IllegalArgumentException
+	 *             if the size is not positive
+	 */
+	public AccessAudit(int size, boolean deniedOnly) {
+		if (size <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.decisions = new AccessDecision[size];
+		this.deniedOnly = deniedOnly;
+	}
+
+	/**
+	 * Records a decision.
+	 *
+	 * @param permission
+	 *            the checked permission
+	 * @param granted
+	 *            the decision
+	 */
+	void record(Permission permission, boolean granted) {
+		if (granted && deniedOnly) {
+			return;
+		}
+		long sequence;
+		synchronized (this) {
+			sequence = nextSequence++;
+		}
+		AccessDecision[] decisions = this.decisions;
+		decisions[(int) (sequence % decisions.length)] = new AccessDecision(sequence,
+				Thread.currentThread().getName(), permission, granted, System.currentTimeMillis());
+	}
+
+	/**
+	 * Moves the decisions recorded since the previous call into the given
+	 * array, oldest first. A decision still being recorded is drained by the
+	 * next call.
+	 *
+	 * @param array
+	 *            the array to fill from index 0
+	 * @return the number of decisions stored in the array
+	 */
+	public int drain(AccessDecision[] array) {
+		AccessDecision[] decisions = this.decisions;
+		int length = decisions.length;
+		long end;
+		synchronized (this) {
+			end = nextSequence;
+		}
+		synchronized (decisions) {
+			long sequence = drainSequence;
+			if (end - sequence > length) {
+				// overwritten before having been drained
+				lostCount += end - sequence - length;
+				sequence = end - length;
+			}
+			int count = 0;
+			while (sequence < end && count < array.length) {
+				AccessDecision decision = decisions[(int) (sequence % length)];
+				if (decision == null || decision.sequence < sequence) {
+					break; // not stored yet
+				}
+				if (decision.sequence == sequence) {
+					array[count++] = decision;
+				} else {
+					++lostCount;
+				}
+				++sequence;
+			}
+			drainSequence = sequence;
+			return count;
+		}
+	}
+
+	/**
+	 * Gets the number of decisions which have been overwritten before being
+	 * drained.
+	 *
+	 * @return the number of lost decisions
+	 */
+	public long getLostCount() {
+		synchronized (decisions) {
+			return lostCount;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+
+/**
+ * An access decision taken by {@link Authorization#check(Permission)},
+ * recorded by an {@link AccessAudit}.
+ */
+public final class AccessDecision {
+
+	final long sequence;
+
+	private final String subject;
+
+	private final Permission permission;
+
+	private final boolean granted;
+
+	private final long timestamp;
+
+	AccessDecision(long sequence, String subject, Permission permission, boolean granted, long timestamp) {
+		this.sequence = sequence;
+		this.subject = subject;
+		this.permission = permission;
+		this.granted = granted;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Gets the sequence number of this decision in its audit. The sequence
+	 * numbers start at 0 and are consecutive.
+	 *
+	 * @return the sequence number
+	 */
+	public long getSequenceNumber() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the name of the thread which requested the access.
+	 *
+	 * @return the thread name
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/**
+	 * Gets the checked permission. Its name and actions are the specification
+	 * of the requested access.
+	 *
+	 * @return the permission
+	 */
+	public Permission getPermission() {
+		return permission;
+	}
+
+	/**
+	 * Tells whether the access has been granted.
+	 *
+	 * @return <code>true</code> if granted, <code>false</code> if denied
+	 */
+	public boolean isGranted() {
+		return granted;
+	}
+
+	/**
+	 * Gets the time of the decision.
+	 *
+	 * @return the time in milliseconds, as given by
+	 *         {@link System#currentTimeMillis()}
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder().append(timestamp).append(' ').append(subject).append(granted ? " granted " : " denied ")
+				.append(permission).toString();
+	}
+}
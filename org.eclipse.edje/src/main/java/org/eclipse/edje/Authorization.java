@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+
+import org.eclipse.edje.util.Util;
+
+/**
+ * Entry point of the access checks of the peripherals and the connections.
+ * When an {@link AuthorizationPolicy} is installed, it decides the accesses and
+ * the {@link SecurityManager} is not used. Otherwise, the checks are delegated
+ * to the security manager, if any. When there is neither a policy nor a
+ * security manager, the checks are skipped: the callers test
+ * {@link #isEnabled()} before building the permission to check.
+ * <p>
+ * The decisions can be recorded by an {@link AccessAudit}, including the
+ * denials ignored by the callers, such as the unreadable peripherals skipped
+ * by the listings.
+ */
+public final class Authorization {
+
+	/**
+	 * The permission required to change the policy.
+	 */
+	private static final String SET_POLICY = "setAuthorizationPolicy";
+
+	/**
+	 * The permission required to change the audit.
+	 */
+	private static final String SET_AUDIT = "setAuthorizationAudit";
+
+	/**
+	 * The installed policy, null when the security manager is used.
+	 */
+	private static volatile AuthorizationPolicy Policy;
+
+	/**
+	 * The audit of the decisions, null when they are not recorded.
+	 */
+	private static volatile AccessAudit Audit;
+
+	static {
+		String key = AuthorizationPolicy.class.getName();
+		String policyImpl = System.getProperty(key);
+		// fall back to service name
+		if (policyImpl == null) {
+			policyImpl = Util.readConfigurableName(key);
+		}
+		if (policyImpl != null) {
+			try {
+				Policy = (AuthorizationPolicy) Class.forName(policyImpl).newInstance();
+			} catch (Throwable e) {
+				throw new AssertionError(e);
+			}
+		}
+	}
+
+	/**
+	 * Forbidden constructor: authorization cannot be instantiated.
+	 */
+	private Authorization() {
+	}
+
+	/**
+	 * Tells whether the accesses are checked, by a policy or by a security
+	 * manager.
+	 *
+	 * @return <code>true</code> if {@link #check(Permission)} must be called
+	 */
+	public static boolean isEnabled() {
+		return Policy != null || System.getSecurityManager() != null;
+	}
+
+	/**
+	 * Checks the given permission with the installed policy, or with the
+	 * security manager if there is no policy.
+	 *
+	 * @param permission
+	 *            the requested permission
+	 * @throws SecurityException
+	 *             if the permission is not granted
+	 */
+	public static void check(Permission permission) {
+		AuthorizationPolicy policy = Policy;
+		AccessAudit audit = Audit;
+		if (policy != null) {
+			boolean granted = policy.implies(permission);
+			if (audit != null) {
+				audit.record(permission, granted);
+			}
+			if (!granted) {
+				throw new SecurityException(new StringBuilder("access denied ").append(permission).toString());
+			}
+		} else {
+			SecurityManager sm = System.getSecurityManager();
+			if (sm != null) {
+				try {
+					sm.checkPermission(permission);
+				} catch (SecurityException e) {
+					if (audit != null) {
+						audit.record(permission, false);
+					}
+					throw e;
+				}
+				if (audit != null) {
+					audit.record(permission, true);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the given permission is granted by the installed policy, or
+	 * by the security manager if there is no policy, without throwing an
+	 * exception when it is denied. The decision is not recorded by the audit:
+	 * this method is meant for the probes which do not access anything by
+	 * themselves, such as the decision of a listing to check the peripherals of
+	 * a class one by one. The security manager cannot be queried without
+	 * catching its exception: the callers rule out the surely denied
+	 * permissions first, with {@link #deniesClass(String, String)} for instance.
+	 *
+	 * @param permission
+	 *            the requested permission
+	 * @return <code>true</code> if the permission is granted or if the
+	 *         accesses are not checked
+	 */
+	static boolean implies(Permission permission) {
+		AuthorizationPolicy policy = Policy;
+		if (policy != null) {
+			return policy.implies(permission);
+		}
+		SecurityManager sm = System.getSecurityManager();
+		if (sm == null) {
+			return true;
+		}
+		try {
+			sm.checkPermission(permission);
+			return true;
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Tells whether the given action is surely denied on all the peripherals
+	 * registered with the given class. Only a
+	 * {@link PermissionsAuthorizationPolicy} can tell it: with another policy or
+	 * the security manager, the peripherals must be checked one by one.
+	 *
+	 * @param className
+	 *            the name of the registration class
+	 * @param action
+	 *            the requested action
+	 * @return <code>true</code> if no peripheral of the class is granted the
+	 *         action
+	 */
+	static boolean deniesClass(String className, String action) {
+		AuthorizationPolicy policy = Policy;
+		return policy instanceof PermissionsAuthorizationPolicy
+				&& !((PermissionsAuthorizationPolicy) policy).mayImplyClass(className, action);
+	}
+
+	/**
+	 * Installs a policy. The current policy (or the security manager) must
+	 * grant the <code>RuntimePermission("setAuthorizationPolicy")</code>.
+	 *
+	 * @param policy
+	 *            the policy, or null to use the security manager again
+	 * @throws SecurityException
+	 *             if the caller is not allowed to change the policy
+	 */
+	public static void setPolicy(AuthorizationPolicy policy) {
+		if (isEnabled()) {
+			check(new RuntimePermission(SET_POLICY));
+		}
+		Policy = policy;
+	}
+
+	/**
+	 * Gets the installed policy.
+	 *
+	 * @return the policy, or null if the security manager is used
+	 */
+	public static AuthorizationPolicy getPolicy() {
+		return Policy;
+	}
+
+	/**
+	 * Installs an audit: the decisions taken by {@link #check(Permission)} are
+	 * recorded in it. The current policy (or the security manager) must grant
+	 * the <code>RuntimePermission("setAuthorizationAudit")</code>.
+	 *
+	 * @param audit
+	 *            the audit, or null to stop recording the decisions
+	 * @throws SecurityException
+	 *             if the caller is not allowed to change the audit
+	 */
+	public static void setAudit(AccessAudit audit) {
+		if (isEnabled()) {
+			check(new RuntimePermission(SET_AUDIT));
+		}
+		Audit = audit;
+	}
+
+	/**
+	 * Gets the installed audit.
+	 *
+	 * @return the audit, or null if the decisions are not recorded
+	 */
+	public static AccessAudit getAudit() {
+		return Audit;
+	}
+}
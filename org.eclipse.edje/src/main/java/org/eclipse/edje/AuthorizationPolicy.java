@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+
+/**
+ * Decides whether the accesses to the peripherals and the connections are
+ * granted, without the {@link SecurityManager}. The decision is global: it does
+ * not depend on the calling code.
+ * <p>
+ * The policy is installed with {@link Authorization#setPolicy(AuthorizationPolicy)},
+ * or set by the <code>org.eclipse.edje.AuthorizationPolicy</code> property (or
+ * resource) which gives the name of an implementation with a public
+ * constructor without argument.
+ *
+ * @see Authorization
+ * @see PermissionsAuthorizationPolicy
+ */
+public interface AuthorizationPolicy {
+
+	/**
+	 * Tells whether the given permission is granted. This method is called on
+	 * each access check and must not block.
+	 *
+	 * @param permission
+	 *            the requested permission, for instance a
+	 *            {@link PeripheralManagerPermission} or a
+	 *            {@link org.eclipse.edje.io.ConnectionPermission}
+	 * @return <code>true</code> if the permission is granted
+	 */
+	boolean implies(Permission permission);
+}
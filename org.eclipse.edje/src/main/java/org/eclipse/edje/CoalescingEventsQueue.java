@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import org.eclipse.edje.util.FixedLengthFIFOQueue;
+
+/**
+ * Queue of {@link RegistrationEvent} which collapses the pending events that
+ * cancel each other out (see {@link EventCoalescer}).
+ */
+class CoalescingEventsQueue extends FixedLengthFIFOQueue<RegistrationEvent<? extends Peripheral>> {
+
+	/**
+	 * The coalescer of the pending events.
+	 */
+	private final EventCoalescer coalescer;
+
+	/**
+	 * Creates a coalescing queue of registration events.
+	 *
+	 * @param bufferSize
+	 *            the FIFO size
+	 */
+	CoalescingEventsQueue(int bufferSize) {
+		super(bufferSize);
+		this.coalescer = new EventCoalescer() {
+			@Override
+			int getLaneCount() {
+				return 1;
+			}
+
+			@Override
+			int getPendingCount(int lane) {
+				return CoalescingEventsQueue.this.getPendingCount();
+			}
+
+			@Override
+			RegistrationEvent<?> getPending(int lane, int index) {
+				return CoalescingEventsQueue.this.getPending(index);
+			}
+
+			@Override
+			void removePending(int lane, int index) {
+				CoalescingEventsQueue.this.removePending(index);
+			}
+		};
+	}
+
+	@Override
+	protected boolean coalesce(RegistrationEvent<? extends Peripheral> data) {
+		return coalescer.coalesce(data);
+	}
+}
@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The immutable constraints of a {@link PeripheralManagerPermission}, stored
+ * as two parallel arrays of property names and values. The property names are
+ * interned, so that a lookup with an interned name, such as a literal, is
+ * mostly an identity comparison. Permissions have a few constraints: a linear
+ * lookup is faster and smaller than hashing.
+ */
+final class ConstraintMap implements Serializable {
+
+	private static final long serialVersionUID = 4736419201283874502L;
+
+	private static final String[] NONE = new String[0];
+
+	/**
+	 * The interned property names.
+	 */
+	private final String[] keys;
+
+	/**
+	 * The values, at the index of their property name.
+	 */
+	private final String[] values;
+
+	private ConstraintMap(String[] keys, String[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * Parses a comma-separated list of <code>name=value</code> pairs. The
+	 * spec is scanned once and only the names and the values are extracted:
+	 * blanks around them are skipped and empty items are ignored.
+	 *
+	 * @param spec
+	 *            the specification string
+	 * @return the constraints
+	 * @throws IllegalArgumentException
+	 *             if an item is not a pair
+	 */
+	static ConstraintMap parse(String spec) {
+		int length = spec.length();
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (spec.charAt(i) == ',') {
+				++count;
+			}
+		}
+		String[] keys = new String[count + 1];
+		String[] values = new String[count + 1];
+		int size = 0;
+		int start = 0;
+		while (start <= length) {
+			int end = spec.indexOf(',', start);
+			if (end == -1) {
+				end = length;
+			}
+			size = parseItem(spec, start, end, keys, values, size);
+			start = end + 1;
+		}
+		return new ConstraintMap(trim(keys, size), trim(values, size));
+	}
+
+	/**
+	 * Parses the item between the given indexes and puts it in the arrays.
+	 *
+	 * @return the new size of the arrays
+	 */
+	private static int parseItem(String spec, int start, int end, String[] keys, String[] values, int size) {
+		// bounds of the non blank segments separated by '='
+		int keyStart = -1;
+		int keyEnd = -1;
+		int valueStart = -1;
+		int valueEnd = -1;
+		int segmentStart = start;
+		while (segmentStart <= end) {
+			int segmentEnd = spec.indexOf('=', segmentStart);
+			if (segmentEnd == -1 || segmentEnd > end) {
+				segmentEnd = end;
+			}
+			int s = skipBlanks(spec, segmentStart, segmentEnd);
+			int e = skipTrailingBlanks(spec, s, segmentEnd);
+			if (s < e) {
+				if (keyStart == -1) {
+					keyStart = s;
+					keyEnd = e;
+				} else if (valueStart == -1) {
+					valueStart = s;
+					valueEnd = e;
+				} else {
+					valueStart = -2; // more than two segments
+				}
+			}
+			segmentStart = segmentEnd + 1;
+		}
+		if (keyStart == -1 && skipBlanks(spec, start, end) == end) {
+			return size; // empty item
+		}
+		if (valueStart < 0) {
+			throw new IllegalArgumentException("Wrong format for spec: " + spec.substring(start, end).trim());
+		}
+		String key = spec.substring(keyStart, keyEnd).intern();
+		String value = spec.substring(valueStart, valueEnd);
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) {
+				// the last value wins
+				values[i] = value;
+				return size;
+			}
+		}
+		keys[size] = key;
+		values[size] = value;
+		return size + 1;
+	}
+
+	private static int skipBlanks(String spec, int start, int end) {
+		while (start < end && spec.charAt(start) <= ' ') {
+			++start;
+		}
+		return start;
+	}
+
+	private static int skipTrailingBlanks(String spec, int start, int end) {
+		while (end > start && spec.charAt(end - 1) <= ' ') {
+			--end;
+		}
+		return end;
+	}
+
+	/**
+	 * Copies the given constraints.
+	 *
+	 * @param constraints
+	 *            the constraints, the null values are ignored
+	 * @return the constraints
+	 */
+	static ConstraintMap of(Map<String, String> constraints) {
+		String[] keys = new String[constraints.size()];
+		String[] values = new String[keys.length];
+		int size = 0;
+		for (Map.Entry<String, String> constraint : constraints.entrySet()) {
+			String value = constraint.getValue();
+			if (value != null) {
+				keys[size] = constraint.getKey().intern();
+				values[size] = value;
+				++size;
+			}
+		}
+		return new ConstraintMap(trim(keys, size), trim(values, size));
+	}
+
+	/**
+	 * Builds the constraints of a peripheral: its name, its registration class
+	 * and the properties of its descriptor.
+	 *
+	 * @param name
+	 *            the name of the peripheral
+	 * @param className
+	 *            the name of the registration class
+	 * @param descriptor
+	 *            the descriptor of the peripheral, may be null
+	 * @return the constraints
+	 */
+	static ConstraintMap of(String name, String className, HardwareDescriptor<?> descriptor) {
+		String[] propertyNames = descriptor != null ? descriptor.getPropertyNames() : NONE;
+		String[] keys = new String[propertyNames.length + 2];
+		String[] values = new String[keys.length];
+		keys[0] = "name";
+		values[0] = name;
+		keys[1] = "class";
+		values[1] = className;
+		int size = 2;
+		for (String property : propertyNames) {
+			String value = descriptor.getProperty(property);
+			if (value != null) {
+				property = property.intern();
+				int index = indexOf(keys, size, property);
+				if (index == -1) {
+					index = size++;
+					keys[index] = property;
+				}
+				values[index] = value;
+			}
+		}
+		return new ConstraintMap(trim(keys, size), trim(values, size));
+	}
+
+	private static String[] trim(String[] array, int size) {
+		if (size == array.length) {
+			return array;
+		}
+		String[] trimmed = new String[size];
+		System.arraycopy(array, 0, trimmed, 0, size);
+		return trimmed;
+	}
+
+	private static int indexOf(String[] keys, int size, String key) {
+		// identity first: the keys and most of the requested names are
+		// interned
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the value of the given property.
+	 *
+	 * @param key
+	 *            the property name
+	 * @return the value, or null if the property is not constrained
+	 */
+	String get(String key) {
+		String[] keys = this.keys;
+		int index = indexOf(keys, keys.length, key);
+		return index != -1 ? values[index] : null;
+	}
+
+	/**
+	 * @return the number of constraints
+	 */
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the constraint
+	 * @return the property name of the constraint
+	 */
+	String getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the constraint
+	 * @return the value of the constraint
+	 */
+	String getValue(int index) {
+		return values[index];
+	}
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * A property constraint of a {@link PeripheralManagerPermission}, compiled
+ * once from its pattern. The pattern may contain any number of wildcard
+ * characters ('*'), each matching any sequence of characters.
+ */
+abstract class ConstraintMatcher {
+
+	private static final char WILDCARD = '*';
+
+	/**
+	 * The name of the constrained property.
+	 */
+	final String property;
+
+	ConstraintMatcher(String property) {
+		this.property = property;
+	}
+
+	/**
+	 * Tells whether the value of the property falls under the constraint.
+	 *
+	 * @param value
+	 *            the value of the property
+	 * @return <code>true</code> if the value matches the constraint
+	 */
+	abstract boolean matches(String value);
+
+	/**
+	 * Compiles a constraint into the cheapest matcher for its pattern.
+	 *
+	 * @param property
+	 *            the name of the constrained property
+	 * @param pattern
+	 *            the constraint pattern
+	 * @return the matcher
+	 */
+	static ConstraintMatcher compile(String property, String pattern) {
+		int first = pattern.indexOf(WILDCARD);
+		if (first == -1) {
+			return new Exact(property, pattern);
+		}
+		int last = pattern.lastIndexOf(WILDCARD);
+		int length = pattern.length();
+		if (first == last) {
+			if (length == 1) {
+				return new Any(property);
+			}
+			if (first == length - 1) {
+				return new Prefix(property, pattern.substring(0, first));
+			}
+			if (first == 0) {
+				return new Suffix(property, pattern.substring(1));
+			}
+			return new PrefixSuffix(property, pattern.substring(0, first), pattern.substring(first + 1));
+		}
+		if (first == 0 && last == length - 1 && pattern.indexOf(WILDCARD, 1) == last) {
+			return new Infix(property, pattern.substring(1, last));
+		}
+		return new Glob(property, pattern);
+	}
+
+	/**
+	 * "value": the value must be equal.
+	 */
+	private static final class Exact extends ConstraintMatcher {
+		private final String expected;
+
+		Exact(String property, String expected) {
+			super(property);
+			this.expected = expected;
+		}
+
+		@Override
+		boolean matches(String value) {
+			return expected.equals(value);
+		}
+	}
+
+	/**
+	 * "*": the property must be set.
+	 */
+	private static final class Any extends ConstraintMatcher {
+		Any(String property) {
+			super(property);
+		}
+
+		@Override
+		boolean matches(String value) {
+			return true;
+		}
+	}
+
+	/**
+	 * "prefix*".
+	 */
+	private static final class Prefix extends ConstraintMatcher {
+		private final String prefix;
+
+		Prefix(String property, String prefix) {
+			super(property);
+			this.prefix = prefix;
+		}
+
+		@Override
+		boolean matches(String value) {
+			return value.startsWith(prefix);
+		}
+	}
+
+	/**
+	 * "*suffix".
+	 */
+	private static final class Suffix extends ConstraintMatcher {
+		private final String suffix;
+
+		Suffix(String property, String suffix) {
+			super(property);
+			this.suffix = suffix;
+		}
+
+		@Override
+		boolean matches(String value) {
+			return value.endsWith(suffix);
+		}
+	}
+
+	/**
+	 * "prefix*suffix": the prefix and the suffix must not overlap.
+	 */
+	private static final class PrefixSuffix extends ConstraintMatcher {
+		private final String prefix;
+		private final String suffix;
+		private final int minLength;
+
+		PrefixSuffix(String property, String prefix, String suffix) {
+			super(property);
+			this.prefix = prefix;
+			this.suffix = suffix;
+			this.minLength = prefix.length() + suffix.length();
+		}
+
+		@Override
+		boolean matches(String value) {
+			return value.length() >= minLength && value.startsWith(prefix) && value.endsWith(suffix);
+		}
+	}
+
+	/**
+	 * "*infix*".
+	 */
+	private static final class Infix extends ConstraintMatcher {
+		private final String infix;
+
+		Infix(String property, String infix) {
+			super(property);
+			this.infix = infix;
+		}
+
+		@Override
+		boolean matches(String value) {
+			return value.contains(infix);
+		}
+	}
+
+	/**
+	 * Any other pattern: the literal segments between the wildcards must
+	 * appear in order, the first one at the beginning of the value (unless the
+	 * pattern starts with a wildcard) and the last one at its end (unless the
+	 * pattern ends with a wildcard).
+	 */
+	private static final class Glob extends ConstraintMatcher {
+		private final String[] segments;
+		private final boolean anchoredStart;
+		private final boolean anchoredEnd;
+
+		Glob(String property, String pattern) {
+			super(property);
+			this.anchoredStart = pattern.charAt(0) != WILDCARD;
+			this.anchoredEnd = pattern.charAt(pattern.length() - 1) != WILDCARD;
+			// count the non empty segments
+			int count = 0;
+			int start = 0;
+			int end;
+			do {
+				end = pattern.indexOf(WILDCARD, start);
+				int segmentEnd = end == -1 ? pattern.length() : end;
+				if (segmentEnd > start) {
+					++count;
+				}
+				start = segmentEnd + 1;
+			} while (end != -1);
+			String[] segments = new String[count];
+			count = 0;
+			start = 0;
+			do {
+				end = pattern.indexOf(WILDCARD, start);
+				int segmentEnd = end == -1 ? pattern.length() : end;
+				if (segmentEnd > start) {
+					segments[count++] = pattern.substring(start, segmentEnd);
+				}
+				start = segmentEnd + 1;
+			} while (end != -1);
+			this.segments = segments;
+		}
+
+		@Override
+		boolean matches(String value) {
+			String[] segments = this.segments;
+			int count = segments.length;
+			int first = 0;
+			int last = count; // exclusive
+			int offset = 0;
+			int limit = value.length(); // exclusive
+			if (anchoredStart) {
+				String segment = segments[first++];
+				if (!value.startsWith(segment)) {
+					return false;
+				}
+				offset = segment.length();
+			}
+			if (anchoredEnd && first < last) {
+				String segment = segments[--last];
+				limit -= segment.length();
+				if (limit < offset || !value.startsWith(segment, limit)) {
+					return false;
+				}
+			}
+			// the other segments match at their first occurrence
+			for (int i = first; i < last; i++) {
+				String segment = segments[i];
+				int index = value.indexOf(segment, offset);
+				if (index == -1 || index + segment.length() > limit) {
+					return false;
+				}
+				offset = index + segment.length();
+			}
+			return true;
+		}
+	}
+}
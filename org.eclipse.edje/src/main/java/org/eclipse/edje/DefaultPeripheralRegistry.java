@@ -14,17 +14,31 @@ package org.eclipse.edje;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import org.eclipse.edje.util.FixedLengthFIFOQueue;
 import org.eclipse.edje.util.Pump;
+import org.eclipse.edje.util.QueueFullException;
 
 /**
- * Default implementation of {@link PeripheralRegistry}. This implementation
- * uses a {@link HashMap}.
+ * Default implementation of {@link PeripheralRegistry}, with the optional
+ * features of {@link ExtendedPeripheralRegistry}. This implementation uses a
+ * {@link HashMap}.
+ * <p>
+ * When the <code>org.eclipse.edje.eventpump.quarantine.threshold</code>
+ * property is set, a listener whose callback lasts longer than this number of
+ * milliseconds is quarantined: it is then notified by a pump of its own, so
+ * that it does not delay the other listeners. The queue of this pump holds
+ * <code>org.eclipse.edje.eventpump.quarantine.size</code> events (10 by
+ * default); when it is full, the event is not notified to the quarantined
+ * listeners and is counted by {@link #getQuarantineDropCount()}. A listener
+ * leaves the quarantine when it is removed: once added again, it is notified
+ * by the event pump until it exceeds the threshold again.
  */
-public class DefaultPeripheralRegistry implements PeripheralRegistry {
+public class DefaultPeripheralRegistry implements ExtendedPeripheralRegistry {
 
 	/**
 	 * Use same HashMap for Peripheral & Listener.
@@ -36,11 +50,104 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 	 */
 	private final HashMap<Class<? extends Peripheral>, ClassRecord<?>> peripheralClassRecords;
 
+	/**
+	 * The event pumps of the partitions started by {@link #start(Pump[])}, may
+	 * be null.
+	 */
+	private volatile Pump<RegistrationEvent<?>>[] pumps;
+
+	/**
+	 * Listeners to notify for the events on a registered class, indexed by the
+	 * registered class. The map and the tables are immutable: the map is
+	 * replaced when a table is added and when the listeners change, so that
+	 * the events dispatch reads them without locking.
+	 */
+	private volatile HashMap<Class<? extends Peripheral>, DispatchTable> dispatchTables;
+
+	/**
+	 * Read decision of an iterated class: all its peripherals are readable.
+	 */
+	private static final int READ_ALL = 0;
+
+	/**
+	 * Read decision of an iterated class: none of its peripherals is readable.
+	 */
+	private static final int READ_NONE = 1;
+
+	/**
+	 * Read decision of an iterated class: its peripherals are checked one by
+	 * one.
+	 */
+	private static final int READ_EACH = 2;
+
+	/**
+	 * Default size of the queue of the quarantine pump.
+	 */
+	private static final int DEFAULT_QUARANTINE_BUFFER_SIZE = 10;
+
+	/**
+	 * Maximum duration of a listener callback in the event pump, in
+	 * milliseconds. A listener exceeding it is quarantined. When 0, the
+	 * callbacks are not measured.
+	 */
+	private final long quarantineThreshold;
+
+	/**
+	 * The number of events held by the queue of {@link #quarantinePump}.
+	 */
+	private final int quarantineSize;
+
+	/**
+	 * Number of events not notified to the quarantined listeners because the
+	 * queue of {@link #quarantinePump} was full. Guarded by
+	 * {@link #peripheralClassRecords}.
+	 */
+	private long quarantineDropCount;
+
+	/**
+	 * Listeners which have exceeded {@link #quarantineThreshold}: they are
+	 * notified by {@link #quarantinePump} instead of the event pump. Guarded
+	 * by {@link #peripheralClassRecords}.
+	 */
+	private final HashSet<RegistrationListener<?>> quarantinedListeners;
+
+	/**
+	 * The queue of {@link #quarantinePump}, created with the first quarantined
+	 * listener.
+	 */
+	private volatile FixedLengthFIFOQueue<QuarantinedEvent> quarantineQueue;
+
+	/**
+	 * The pump which notifies the quarantined listeners, so that they do not
+	 * delay the others.
+	 */
+	private volatile Pump<QuarantinedEvent> quarantinePump;
+
+	/**
+	 * Sequence number of the last created event. Guarded by
+	 * {@link #peripheralClassRecords}.
+	 */
+	private long lastSequence;
+
+	/**
+	 * Ring buffer of the last created events, indexed by their sequence number
+	 * modulo its length. Null when the events are not journaled. Guarded by
+	 * {@link #peripheralClassRecords}.
+	 */
+	private final RegistrationEvent<?>[] journal;
+
 	/**
 	 * Creates a peripheral registry.
 	 */
 	protected DefaultPeripheralRegistry() {
 		peripheralClassRecords = new HashMap<>();
+		dispatchTables = new HashMap<>();
+		quarantinedListeners = new HashSet<>();
+		quarantineThreshold = Integer.getInteger("org.eclipse.edje.eventpump.quarantine.threshold", 0).intValue();
+		quarantineSize = Integer.getInteger("org.eclipse.edje.eventpump.quarantine.size",
+				DEFAULT_QUARANTINE_BUFFER_SIZE).intValue();
+		int journalSize = Integer.getInteger("org.eclipse.edje.eventpump.journal.size", 0).intValue();
+		journal = journalSize > 0 ? new RegistrationEvent<?>[journalSize] : null;
 	}
 
 	@Override
@@ -62,9 +169,104 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 	 *            the peripheral type.
 	 */
 	private <C extends Peripheral, P extends C> void check(Class<C> peripheralType, P peripheral, String action) {
-		SecurityManager sm = System.getSecurityManager();
-		if (sm != null) {
-			sm.checkPermission(new PeripheralManagerPermission(peripheralType, peripheral, action));
+		check(peripheralType, peripheral, null, action);
+	}
+
+	/**
+	 * Checks the given action for the given peripheral type, with the cached
+	 * permissions of the registered peripheral.
+	 *
+	 * @param peripheralType
+	 *            the peripheral type.
+	 * @param peripheral
+	 *            the peripheral.
+	 * @param permissions
+	 *            the permissions of the peripheral, or null to build a new
+	 *            permission
+	 * @param action
+	 *            the permission to check.
+	 */
+	private <C extends Peripheral, P extends C> void check(Class<C> peripheralType, P peripheral,
+			PermissionCache permissions, String action) {
+		if (Authorization.isEnabled()) {
+			Authorization.check(permissions != null ? permissions.get(peripheralType, peripheral, action)
+					: new PeripheralManagerPermission(peripheralType, peripheral, action));
+		}
+	}
+
+	/**
+	 * Checks the read access to a registered peripheral, with its cached
+	 * permissions when {@link #cachesReadChecks()} allows it, otherwise with
+	 * {@link #checkRead(Class, Peripheral)}.
+	 *
+	 * @param peripheralType
+	 *            the peripheral type.
+	 * @param peripheral
+	 *            the peripheral.
+	 * @param permissions
+	 *            the permissions of the peripheral
+	 */
+	private <C extends Peripheral, P extends C> void checkRead(Class<C> peripheralType, P peripheral,
+			PermissionCache permissions) {
+		if (cachesReadChecks()) {
+			check(peripheralType, peripheral, permissions, PeripheralManagerPermission.READ);
+		} else {
+			checkRead(peripheralType, peripheral);
+		}
+	}
+
+	/**
+	 * Tells whether the read accesses of the listings and of the events
+	 * notifications can be checked with the cached permissions of the
+	 * registered peripherals, and decided once per registered class, instead
+	 * of calling {@link #checkRead(Class, Peripheral)} for each peripheral.
+	 * Whether a subclass overrides {@link #checkRead(Class, Peripheral)}
+	 * cannot be told, so it is only the case for this class by default: a
+	 * subclass which does not override it may return <code>true</code>.
+	 *
+	 * @return <code>true</code> if the cached permissions can be checked
+	 */
+	protected boolean cachesReadChecks() {
+		return getClass() == DefaultPeripheralRegistry.class;
+	}
+
+	/**
+	 * Decides how the peripherals registered with the given class are checked
+	 * for the {@link PeripheralManagerPermission#READ} action. A class that no
+	 * grant can match is not read at all. Otherwise the class is probed once:
+	 * if a grant does not constrain the peripherals of the class beyond their
+	 * class, all of them are readable. Without {@link #cachesReadChecks()}, the
+	 * peripherals are always checked one by one.
+	 *
+	 * @param c
+	 *            the registration class
+	 * @param record
+	 *            the record of the class
+	 * @return {@link #READ_ALL}, {@link #READ_NONE} or {@link #READ_EACH}
+	 */
+	private int readDecision(Class<?> c, ClassRecord<?> record) {
+		if (!cachesReadChecks()) {
+			return READ_EACH;
+		}
+		if (!Authorization.isEnabled()) {
+			return READ_ALL;
+		}
+		if (Authorization.deniesClass(c.getName(), PeripheralManagerPermission.READ)) {
+			return READ_NONE;
+		}
+		// a probe, not an access: the audit records the peripheral checks only
+		return Authorization.implies(record.getReadPermission(c)) ? READ_ALL : READ_EACH;
+	}
+
+	@Override
+	public void descriptorChanged(Peripheral peripheral) {
+		synchronized (peripheralClassRecords) {
+			for (ClassRecord<?> cr : peripheralClassRecords.values()) {
+				PeripheralEntry<?> entry = cr.getEntry(peripheral);
+				if (entry != null) {
+					entry.permissions.invalidate();
+				}
+			}
 		}
 	}
 
@@ -74,6 +276,92 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		synchronized (peripheralClassRecords) {
 			ClassRecord<P> record = getPeripheralClassRecord(peripheralType);
 			record.addListener(listener);
+			dispatchTables = new HashMap<>();
+		}
+	}
+
+	@Override
+	public <P extends Peripheral> void addRegistrationListener(RegistrationListener<P> listener,
+			Class<P> peripheralType, long fromSequence) {
+		if (listener == null) {
+			throw new IllegalArgumentException();
+		}
+		ReplayListener<P> replayListener = new ReplayListener<>(listener);
+		ArrayList<RegistrationEvent<P>> events = new ArrayList<>();
+		// live events are held back until the replay is done
+		synchronized (replayListener) {
+			HashMap<Class<? extends Peripheral>, ClassRecord<?>> records = peripheralClassRecords;
+			synchronized (records) {
+				long lastSequence = this.lastSequence;
+				ClassFilter<P> classFilter = new SubTypesFilter<>(peripheralType);
+				if (fromSequence == SNAPSHOT) {
+					// a registration event for each registered peripheral
+					for (Class<? extends Peripheral> c : records.keySet()) {
+						if (classFilter.check(c)) {
+							@SuppressWarnings("unchecked")
+							ClassRecord<P> cr = (ClassRecord<P>) records.get(c);
+							@SuppressWarnings("unchecked")
+							Class<P> registeredClass = (Class<P>) c;
+							for (PeripheralEntry<P> entry : cr.peripherals) {
+								RegistrationEvent<P> event = new RegistrationEvent<>(this, entry.peripheral,
+										registeredClass, true);
+								event.sequence = lastSequence;
+								event.permissions = entry.permissions;
+								events.add(event);
+							}
+						}
+					}
+					replayListener.lastReplayedSequence = lastSequence;
+				} else {
+					// sequence numbers start from 1
+					fromSequence = Math.max(fromSequence, 1);
+					RegistrationEvent<?>[] journal = this.journal;
+					long oldestSequence = journal == null ? lastSequence + 1
+							: Math.max(1, lastSequence - journal.length + 1);
+					if (fromSequence < oldestSequence && fromSequence <= lastSequence) {
+						throw new IllegalArgumentException("Events are journaled from sequence " + oldestSequence);
+					}
+					for (long sequence = fromSequence; sequence <= lastSequence; sequence++) {
+						RegistrationEvent<?> event = journal[(int) (sequence % journal.length)];
+						if (classFilter.check(event.getRegisteredClass())) {
+							// the journaled event may be being notified by a
+							// pump: the replay is another delivery
+							@SuppressWarnings("unchecked")
+							RegistrationEvent<P> e = (RegistrationEvent<P>) event.copy();
+							events.add(e);
+						}
+					}
+					replayListener.lastReplayedSequence = Math.max(lastSequence, fromSequence - 1);
+				}
+				ClassRecord<P> record = getPeripheralClassRecord(peripheralType);
+				record.addListener(replayListener);
+				dispatchTables = new HashMap<>();
+			}
+
+			for (RegistrationEvent<P> event : events) {
+				if (event.enqueueTime != 0) {
+					event.dispatchTime = System.nanoTime();
+				}
+				try {
+					checkRead(event.getRegisteredClass(), event.getPeripheral(), event.permissions);
+				} catch (SecurityException ex) {
+					// we skip this if you can't read it
+					continue;
+				}
+				try {
+					if (event.isRegistration()) {
+						listener.peripheralRegistered(event);
+					} else {
+						listener.peripheralUnregistered(event);
+					}
+				} catch (Throwable e) {
+					Pump<RegistrationEvent<?>>[] pumps = this.pumps;
+					if (pumps == null) {
+						throw e;
+					}
+					pumps[0].crash(e);
+				}
+			}
 		}
 	}
 
@@ -90,6 +378,13 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 					it.remove();// free the record
 				}
 			}
+			Iterator<RegistrationListener<?>> quarantined = quarantinedListeners.iterator();
+			while (quarantined.hasNext()) {
+				if (ClassRecord.isListener(quarantined.next(), listener)) {
+					quarantined.remove();
+				}
+			}
+			dispatchTables = new HashMap<>();
 		}
 	}
 
@@ -111,9 +406,9 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 
 			// add the peripheral
 			ClassRecord<P> record = getPeripheralClassRecord(peripheralType);
-			record.addPeripheral(peripheral, staticPeripheral);
+			PeripheralEntry<P> entry = record.addPeripheral(peripheral, staticPeripheral);
 			if (createEvent) {
-				return newRegistrationEvent(peripheral, peripheralType, true);
+				return createEvent(peripheral, peripheralType, true, entry.permissions);
 			}
 		}
 		return null;
@@ -128,12 +423,16 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 			if (cr != null && cr.contains(peripheral)) {
 				@SuppressWarnings("unchecked")
 				ClassRecord<P> crp = (ClassRecord<P>) cr;
-				crp.removePeripheral(peripheral);
+				PeripheralEntry<P> entry = crp.removePeripheral(peripheral);
+				if (entry == null) {
+					// static peripherals cannot be unregistered
+					return null;
+				}
 				if (cr.isEmpty()) {
 					records.remove(peripheralType);// free the record
 				}
 				if (createEvent) {
-					return newRegistrationEvent(peripheral, peripheralType, false);
+					return createEvent(peripheral, peripheralType, false, entry.permissions);
 				}
 			}
 		}
@@ -216,12 +515,85 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 
 	<C extends Peripheral, P extends C> RegistrationEvent<C> newRegistrationEvent(P peripheral,
 			Class<C> registeredClass, boolean add) {
-		return new RegistrationEvent<>(this, peripheral, registeredClass, add);
+		// synchronization on #peripheralClassRecords must be done by the caller
+		RegistrationEvent<C> event = new RegistrationEvent<>(this, peripheral, registeredClass, add);
+		event.sequence = ++lastSequence;
+		event.enqueueTime = System.nanoTime();
+		return event;
+	}
+
+	/**
+	 * Creates the event of a registration or an unregistration, and journals
+	 * it. The caller must hold the lock on {@link #peripheralClassRecords}.
+	 *
+	 * @param peripheral
+	 *            the registered or unregistered peripheral
+	 * @param registeredClass
+	 *            the class used to register the peripheral
+	 * @param add
+	 *            <code>true</code> for register event, <code>false</code> for
+	 *            unregister event
+	 * @param permissions
+	 *            the permissions of the registered peripheral
+	 * @return the event to dispatch, or null if no listener would be notified
+	 *         of it
+	 */
+	private <P extends Peripheral> RegistrationEvent<P> createEvent(P peripheral, Class<P> registeredClass,
+			boolean add, PermissionCache permissions) {
+		boolean hasListeners = hasListeners(registeredClass);
+		RegistrationEvent<?>[] journal = this.journal;
+		if (!hasListeners && journal == null) {
+			return null;
+		}
+		RegistrationEvent<P> event = newRegistrationEvent(peripheral, registeredClass, add);
+		event.permissions = permissions;
+		if (journal != null) {
+			journal[(int) (event.sequence % journal.length)] = event;
+		}
+		return hasListeners ? event : null;
 	}
 
 	@Override
 	public <P extends Peripheral> void executeEvent(Pump<RegistrationEvent<?>> pump, RegistrationEvent<P> data) {
-		executeEvent(pump, data, new SuperTypesFilter<>(data.getRegisteredClass()));
+		data.dispatchTime = System.nanoTime();
+		DispatchTable table = getDispatchTable(data.getRegisteredClass());
+		// the listeners notified inline are not quarantined: there is no event
+		// thread to isolate them from
+		executeEvent(pump, data, table.listeners, pumps != null ? quarantineThreshold : 0);
+		ListenerEntry[] quarantinedListeners = table.quarantinedListeners;
+		if (quarantinedListeners.length != 0) {
+			// notified later by the quarantine pump, with the listeners
+			// quarantined when the event has been dispatched: those
+			// quarantined meanwhile have already been notified
+			try {
+				quarantineQueue.add(new QuarantinedEvent(data, quarantinedListeners));
+			} catch (QueueFullException e) {
+				// the quarantined listeners cannot keep up: do not delay the
+				// others by waiting for them
+				synchronized (peripheralClassRecords) {
+					quarantineDropCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of events that have not been notified to the quarantined
+	 * listeners because the queue of their pump was full.
+	 *
+	 * @return the number of dropped events
+	 */
+	public long getQuarantineDropCount() {
+		synchronized (peripheralClassRecords) {
+			return quarantineDropCount;
+		}
+	}
+
+	@Override
+	public <P extends Peripheral> void executeSynchronousEvent(Pump<RegistrationEvent<?>> pump,
+			RegistrationEvent<P> data) {
+		data.dispatchTime = System.nanoTime();
+		executeEvent(pump, data, getDispatchTable(data.getRegisteredClass()).synchronousListeners, 0);
 	}
 
 	/**
@@ -231,50 +603,180 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 	 *            the pump which manages the pool of events
 	 * @param data
 	 *            the registration event
-	 * @param classFilter
-	 *            the type of the peripheral
+	 * @param listeners
+	 *            the listeners to notify
+	 * @param threshold
+	 *            the maximum duration of a callback before the listener is
+	 *            quarantined, in milliseconds, or 0 to not measure the
+	 *            callbacks
 	 */
-	private <P extends Peripheral> void executeEvent(Pump<RegistrationEvent<?>> pump, RegistrationEvent<P> data,
-			ClassFilter<P> classFilter) {
-		Class<P>[] registeredClasses = getRegisteredClasses(classFilter);
-		if (data.isRegistration()) {
-			for (Class<P> c : registeredClasses) {
-				ClassRecord<P> cr = getPeripheralClassRecord(c);
-
-				for (RegistrationListener<P> listener : cr.listeners) {
+	private <P extends Peripheral> void executeEvent(Pump<?> pump, RegistrationEvent<P> data,
+			ListenerEntry[] listeners, long threshold) {
+		P peripheral = data.getPeripheral();
+		boolean registration = data.isRegistration();
+		// the listeners are grouped by class: check access once per class
+		Class<? extends Peripheral> checkedClass = null;
+		boolean readable = false;
+		for (ListenerEntry entry : listeners) {
+			try {
+				// here conversion is true for sure (because of
+				// isAssignableFrom())
+				@SuppressWarnings("unchecked")
+				Class<P> c = (Class<P>) entry.listenedClass;
+				if (c != checkedClass) {
+					checkedClass = c;
 					try {
-						try {
-							checkRead(c, data.getPeripheral());
-						} catch (SecurityException ex) {
-							// we skip this if you can't read it
-							continue;
-						}
+						checkRead(c, peripheral, data.permissions);
+						readable = true;
+					} catch (SecurityException ex) {
+						// we skip this if you can't read it
+						readable = false;
+					}
+				}
+				if (!readable) {
+					continue;
+				}
+				@SuppressWarnings("unchecked")
+				RegistrationListener<P> listener = (RegistrationListener<P>) entry.listener;
+				long start = threshold != 0 ? System.currentTimeMillis() : 0;
+				try {
+					if (registration) {
 						listener.peripheralRegistered(data);
-					} catch (Throwable e) {
-						pump.crash(e);
+					} else {
+						listener.peripheralUnregistered(data);
+					}
+				} finally {
+					if (threshold != 0 && System.currentTimeMillis() - start > threshold) {
+						quarantine(listener, pump);
 					}
 				}
+			} catch (Throwable e) {
+				pump.crash(e);
 			}
-		} else {
-			// Peripheral unregistered: notify listeners for all supertypes of
-			// the peripheral class
-			for (Class<P> c : registeredClasses) {
-				ClassRecord<P> cr = getPeripheralClassRecord(c);
-				for (RegistrationListener<P> listener : cr.listeners) {
-					try {
-						try {
-							checkRead(c, data.getPeripheral());
-						} catch (SecurityException ex) {
-							// we skip this if you can't read it
-							continue;
+		}
+	}
+
+	/**
+	 * Moves a slow listener to the quarantine pump: it will not delay the
+	 * other listeners anymore. Nothing is done if the listener has been
+	 * removed meanwhile.
+	 *
+	 * @param listener
+	 *            the listener to quarantine
+	 * @param eventPump
+	 *            the pump which reports the errors of the listeners
+	 */
+	private void quarantine(RegistrationListener<?> listener, final Pump<?> eventPump) {
+		HashMap<Class<? extends Peripheral>, ClassRecord<?>> records = peripheralClassRecords;
+		synchronized (records) {
+			if (!isRegistered(listener) || !quarantinedListeners.add(listener)) {
+				return;
+			}
+			if (quarantinePump == null) {
+				FixedLengthFIFOQueue<QuarantinedEvent> queue = new FixedLengthFIFOQueue<>(quarantineSize);
+				Pump<QuarantinedEvent> pump = new Pump<QuarantinedEvent>(queue, Thread.MIN_PRIORITY, null) {
+
+					@Override
+					public void execute(QuarantinedEvent data) {
+						// the event pump has notified the event with its own
+						// dispatch time
+						RegistrationEvent<?> event = data.event.copy();
+						event.dispatchTime = System.nanoTime();
+						executeEvent(this, event, data.listeners, 0);
+					}
+
+					@Override
+					public void crash(Throwable e) {
+						eventPump.crash(e);
+					}
+				};
+				quarantineQueue = queue;
+				quarantinePump = pump;
+				pump.start("EdjeQuarantinePump");
+			}
+			dispatchTables = new HashMap<>();
+		}
+	}
+
+	/**
+	 * Tells whether the given listener is added on a class. The caller must
+	 * hold the lock on {@link #peripheralClassRecords}.
+	 *
+	 * @param listener
+	 *            a listener of a record
+	 * @return <code>true</code> if the listener has not been removed
+	 */
+	private boolean isRegistered(RegistrationListener<?> listener) {
+		for (ClassRecord<?> cr : peripheralClassRecords.values()) {
+			if (cr.listeners.contains(listener)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether an event on the given registered class has at least one
+	 * listener to notify. When there is none, creating and queuing the event is
+	 * useless.
+	 *
+	 * @param registeredClass
+	 *            the class used to register the peripheral
+	 * @return <code>true</code> if some listeners have been added on a
+	 *         supertype of the registered class
+	 */
+	private boolean hasListeners(Class<? extends Peripheral> registeredClass) {
+		DispatchTable table = getDispatchTable(registeredClass);
+		return table.listeners.length != 0 || table.synchronousListeners.length != 0
+				|| table.quarantinedListeners.length != 0;
+	}
+
+	/**
+	 * Gets the listeners to notify for an event on the given registered class.
+	 * The table is built on the first call after the listeners have changed.
+	 *
+	 * @param registeredClass
+	 *            the class used to register the peripheral
+	 * @return the dispatch table
+	 */
+	private DispatchTable getDispatchTable(Class<? extends Peripheral> registeredClass) {
+		DispatchTable table = dispatchTables.get(registeredClass);
+		if (table == null) {
+			HashMap<Class<? extends Peripheral>, ClassRecord<?>> records = peripheralClassRecords;
+			synchronized (records) {
+				HashMap<Class<? extends Peripheral>, DispatchTable> tables = dispatchTables;
+				table = tables.get(registeredClass);
+				if (table == null) {
+					// Peripheral (un)registered: notify listeners for all
+					// supertypes of the peripheral class
+					ClassFilter<?> classFilter = new SuperTypesFilter<>(registeredClass);
+					ArrayList<ListenerEntry> listeners = new ArrayList<>();
+					ArrayList<ListenerEntry> synchronousListeners = new ArrayList<>();
+					ArrayList<ListenerEntry> quarantinedListeners = new ArrayList<>();
+					for (Class<? extends Peripheral> c : records.keySet()) {
+						if (classFilter.check(c)) {
+							for (RegistrationListener<?> listener : records.get(c).listeners) {
+								ListenerEntry entry = new ListenerEntry(c, listener);
+								if (listener instanceof SynchronousRegistrationListener) {
+									synchronousListeners.add(entry);
+								} else if (this.quarantinedListeners.contains(listener)) {
+									quarantinedListeners.add(entry);
+								} else {
+									listeners.add(entry);
+								}
+							}
 						}
-						listener.peripheralUnregistered(data);
-					} catch (Throwable e) {
-						pump.crash(e);
 					}
+					table = new DispatchTable(listeners.toArray(new ListenerEntry[listeners.size()]),
+							synchronousListeners.toArray(new ListenerEntry[synchronousListeners.size()]),
+							quarantinedListeners.toArray(new ListenerEntry[quarantinedListeners.size()]));
+					HashMap<Class<? extends Peripheral>, DispatchTable> newTables = new HashMap<>(tables);
+					newTables.put(registeredClass, table);
+					dispatchTables = newTables;
 				}
 			}
 		}
+		return table;
 	}
 
 	@Override
@@ -326,6 +828,11 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		 */
 		private int peripheralPtr;
 
+		/**
+		 * How the peripherals of the current record are checked.
+		 */
+		private int readDecision;
+
 		/**
 		 * Next peripheral in list.
 		 */
@@ -370,6 +877,10 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 					ClassRecord<P> cr = (ClassRecord<P>) peripheralClassRecords.get(c);
 					if (cr != null) { // may have been removed since the
 										// snapshot has been taken
+						readDecision = readDecision(c, cr);
+						if (readDecision == READ_NONE) {
+							continue; // find next record
+						}
 						currentRecord = cr;
 						peripheralPtr = -1;
 					} else {
@@ -380,12 +891,15 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 				// here, currentRecord != null
 				ArrayList<PeripheralEntry<P>> peripherals = currentRecord.peripherals;
 				try {
-					P p = peripherals.get(++peripheralPtr).peripheral;
-					try {
-						checkRead(classes[classPtr], p);
-					} catch (SecurityException ex) {
-						// we skip this if you can't read it
-						continue;
+					PeripheralEntry<P> entry = peripherals.get(++peripheralPtr);
+					P p = entry.peripheral;
+					if (readDecision == READ_EACH) {
+						try {
+							checkRead(classes[classPtr], p, entry.permissions);
+						} catch (SecurityException ex) {
+							// we skip this if you can't read it
+							continue;
+						}
 					}
 					return p;
 				} catch (IndexOutOfBoundsException e) {
@@ -477,9 +991,126 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		}
 	}
 
+	/**
+	 * Listener added with a replay of past events. The live events are
+	 * forwarded to the listener once the replay is done, except those already
+	 * replayed.
+	 *
+	 * @param <P>
+	 *            the type of the peripheral
+	 */
+	static class ReplayListener<P extends Peripheral> implements RegistrationListener<P> {
+
+		/**
+		 * The listener given by the application.
+		 */
+		final RegistrationListener<P> listener;
+
+		/**
+		 * Sequence number of the last replayed event. Live events up to this
+		 * one are ignored.
+		 */
+		long lastReplayedSequence;
+
+		ReplayListener(RegistrationListener<P> listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public synchronized void peripheralRegistered(RegistrationEvent<P> event) {
+			if (event.sequence > lastReplayedSequence) {
+				listener.peripheralRegistered(event);
+			}
+		}
+
+		@Override
+		public synchronized void peripheralUnregistered(RegistrationEvent<P> event) {
+			if (event.sequence > lastReplayedSequence) {
+				listener.peripheralUnregistered(event);
+			}
+		}
+	}
+
+	/**
+	 * A listener and the class it listens for.
+	 */
+	static class ListenerEntry {
+
+		/**
+		 * The class the listener has been added on.
+		 */
+		final Class<? extends Peripheral> listenedClass;
+
+		/**
+		 * The listener.
+		 */
+		final RegistrationListener<?> listener;
+
+		ListenerEntry(Class<? extends Peripheral> listenedClass, RegistrationListener<?> listener) {
+			this.listenedClass = listenedClass;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * An event queued for the quarantine pump, with the quarantined listeners
+	 * to notify.
+	 */
+	static class QuarantinedEvent {
+
+		/**
+		 * The event to notify.
+		 */
+		final RegistrationEvent<?> event;
+
+		/**
+		 * The listeners which were quarantined when the event has been
+		 * dispatched.
+		 */
+		final ListenerEntry[] listeners;
+
+		QuarantinedEvent(RegistrationEvent<?> event, ListenerEntry[] listeners) {
+			this.event = event;
+			this.listeners = listeners;
+		}
+	}
+
+	/**
+	 * Immutable tables of the listeners to notify for the events on a
+	 * registered class.
+	 */
+	static class DispatchTable {
+
+		/**
+		 * Listeners notified by the event pump.
+		 */
+		final ListenerEntry[] listeners;
+
+		/**
+		 * Listeners notified by the registering thread.
+		 */
+		final ListenerEntry[] synchronousListeners;
+
+		/**
+		 * Listeners notified by the quarantine pump.
+		 */
+		final ListenerEntry[] quarantinedListeners;
+
+		DispatchTable(ListenerEntry[] listeners, ListenerEntry[] synchronousListeners,
+				ListenerEntry[] quarantinedListeners) {
+			this.listeners = listeners;
+			this.synchronousListeners = synchronousListeners;
+			this.quarantinedListeners = quarantinedListeners;
+		}
+	}
+
 	static class PeripheralEntry<P extends Peripheral> {
 		final boolean isStatic;
 		final P peripheral;
+		/**
+		 * The permissions checked on the peripheral, reused by the checks.
+		 */
+		final PermissionCache permissions;
 
 		PeripheralEntry(P peripheral, boolean isStatic) {
 			if (peripheral == null) {
@@ -487,6 +1118,7 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 			}
 			this.isStatic = isStatic;
 			this.peripheral = peripheral;
+			this.permissions = new PermissionCache();
 		}
 
 		@Override
@@ -535,6 +1167,12 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		 */
 		final ArrayList<PeripheralEntry<P>> peripherals;
 
+		/**
+		 * The permission to read all the peripherals of this class, built on
+		 * first use.
+		 */
+		private volatile PeripheralManagerPermission readPermission;
+
 		/**
 		 * Creates a record for a list of listeners and peripheral.
 		 */
@@ -543,6 +1181,24 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 			peripherals = new ArrayList<>();
 		}
 
+		/**
+		 * Gets the permission to read all the peripherals of this class: it is
+		 * only constrained by the class.
+		 *
+		 * @param c
+		 *            the class of this record
+		 * @return the permission
+		 */
+		PeripheralManagerPermission getReadPermission(Class<?> c) {
+			PeripheralManagerPermission permission = readPermission;
+			if (permission == null) {
+				permission = new PeripheralManagerPermission(
+						new StringBuilder("class=").append(c.getName()).toString(), PeripheralManagerPermission.READ);
+				readPermission = permission;
+			}
+			return permission;
+		}
+
 		/**
 		 * @param listener
 		 *            the listener to add
@@ -559,30 +1215,69 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		 *            the listener to remove
 		 */
 		void removeListener(RegistrationListener<?> listener) {
-			listeners.remove(listener);
+			Iterator<RegistrationListener<P>> it = listeners.iterator();
+			while (it.hasNext()) {
+				if (isListener(it.next(), listener)) {
+					it.remove();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * @param registered
+		 *            a listener of a record
+		 * @param listener
+		 *            the listener given by the application
+		 * @return true if the registered listener is the given one, or
+		 *         replays events to it
+		 */
+		static boolean isListener(RegistrationListener<?> registered, RegistrationListener<?> listener) {
+			if (registered instanceof ReplayListener) {
+				registered = ((ReplayListener<?>) registered).listener;
+			}
+			return listener.equals(registered);
 		}
 
 		/**
 		 * @param p
 		 *            the peripheral to add
+		 * @return the entry of the added peripheral
 		 */
-		void addPeripheral(P p, boolean isStatic) {
+		PeripheralEntry<P> addPeripheral(P p, boolean isStatic) {
 			if (p == null) {
 				throw new IllegalArgumentException();
 			}
-			peripherals.add(new PeripheralEntry<>(p, isStatic));
+			PeripheralEntry<P> entry = new PeripheralEntry<>(p, isStatic);
+			peripherals.add(entry);
+			return entry;
 		}
 
 		/**
 		 * @param p
 		 *            the peripheral to remove
-		 * @return true if peripheral has been removed
+		 * @return the entry of the removed peripheral, or null if it has not
+		 *         been found
 		 */
-		boolean removePeripheral(P p) {
+		PeripheralEntry<P> removePeripheral(P p) {
 			// create a template for the entry to be removed
 			// (must NOT be static)
-			PeripheralEntry<P> entry = new PeripheralEntry<>(p, false);
-			return peripherals.remove(entry);
+			int index = peripherals.indexOf(new PeripheralEntry<>(p, false));
+			return index != -1 ? peripherals.remove(index) : null;
+		}
+
+		/**
+		 * @param p
+		 *            the peripheral to look for
+		 * @return the entry of the peripheral, or null if not found
+		 */
+		PeripheralEntry<P> getEntry(Peripheral p) {
+			for (PeripheralEntry<P> entry : peripherals) {
+				if (p.equals(entry.peripheral)) {
+					return entry;
+				}
+			}
+			return null;
 		}
 
 		/**
@@ -598,21 +1293,83 @@ public class DefaultPeripheralRegistry implements PeripheralRegistry {
 		 * @return true if found
 		 */
 		public boolean contains(Peripheral p) {
-			for (PeripheralEntry<P> entry : peripherals) {
-				if (p.equals(entry.peripheral)) {
-					return true;
+			return getEntry(p) != null;
+		}
+	}
+
+	@Override
+	public void start(Pump<RegistrationEvent<?>>[] pumps) {
+		this.pumps = pumps;
+		// subclasses populate the static devices in start(Pump)
+		start(pumps != null ? pumps[0] : null);
+	}
+
+	@Override
+	public void start(Pump<RegistrationEvent<?>> pump) {
+		Pump<RegistrationEvent<?>>[] pumps = this.pumps;
+		if (pumps == null && pump != null) {
+			// single partition, not started by start(Pump[])
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			Pump<RegistrationEvent<?>>[] singlePump = new Pump[] { pump };
+			pumps = singlePump;
+			this.pumps = pumps;
+		}
+		startPumps();
+	}
+
+	@Override
+	public void restartPumps() {
+		startPumps();
+	}
+
+	/**
+	 * Starts the event pumps and the quarantine pump that are not running.
+	 */
+	private void startPumps() {
+		Pump<RegistrationEvent<?>>[] pumps = this.pumps;
+		if (pumps != null) {
+			int partitions = pumps.length;
+			for (int i = 0; i < partitions; i++) {
+				Pump<RegistrationEvent<?>> pump = pumps[i];
+				if (!pump.isRunning()) {
+					pump.start(partitions == 1 ? "EdjePump" : new StringBuilder("EdjePump").append(i).toString());
 				}
 			}
-			return false;
+		}
+		Pump<QuarantinedEvent> quarantinePump = this.quarantinePump;
+		if (quarantinePump != null && !quarantinePump.isRunning()) {
+			quarantinePump.start("EdjeQuarantinePump");
 		}
 	}
 
 	@Override
-	public void start(Pump<RegistrationEvent<?>> pump) {
-		if (pump != null) {
-			Thread t = new Thread(pump, "EdjePump");
-			t.setPriority(pump.getPriority());
-			t.start();
+	public boolean drain(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		Pump<RegistrationEvent<?>>[] pumps = this.pumps;
+		if (pumps != null) {
+			for (Pump<RegistrationEvent<?>> pump : pumps) {
+				if (!pump.drain(deadline - System.currentTimeMillis())) {
+					return false;
+				}
+			}
+		}
+		// the event pumps feed the quarantine pump
+		Pump<QuarantinedEvent> quarantinePump = this.quarantinePump;
+		return quarantinePump == null || quarantinePump.drain(deadline - System.currentTimeMillis());
+	}
+
+	@Override
+	public boolean stopPumps(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		Pump<RegistrationEvent<?>>[] pumps = this.pumps;
+		if (pumps != null) {
+			for (Pump<RegistrationEvent<?>> pump : pumps) {
+				if (!pump.stop(deadline - System.currentTimeMillis())) {
+					return false;
+				}
+			}
 		}
+		Pump<QuarantinedEvent> quarantinePump = this.quarantinePump;
+		return quarantinePump == null || quarantinePump.stop(deadline - System.currentTimeMillis());
 	}
 }
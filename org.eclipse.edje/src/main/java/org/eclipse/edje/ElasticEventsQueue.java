@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import org.eclipse.edje.util.ElasticFIFOQueue;
+
+/**
+ * Queue of {@link RegistrationEvent} with elastic capacity. Pending events that
+ * cancel each other out may be collapsed (see {@link EventCoalescer}).
+ */
+class ElasticEventsQueue extends ElasticFIFOQueue<RegistrationEvent<? extends Peripheral>> {
+
+	/**
+	 * The coalescer of the pending events, null if the pending
+	 * register/unregister pairs are not collapsed.
+	 */
+	private final EventCoalescer coalescer;
+
+	/**
+	 * Creates an elastic queue of registration events.
+	 *
+	 * @param initialCapacity
+	 *            the capacity the queue starts with and shrinks back to
+	 * @param segmentSize
+	 *            the capacity added or removed at once
+	 * @param maxCapacity
+	 *            the capacity the queue cannot grow beyond
+	 * @param coalesce
+	 *            whether the pending register/unregister pairs are collapsed
+	 */
+	ElasticEventsQueue(int initialCapacity, int segmentSize, int maxCapacity, boolean coalesce) {
+		super(initialCapacity, segmentSize, maxCapacity);
+		this.coalescer = !coalesce ? null : new EventCoalescer() {
+			@Override
+			int getLaneCount() {
+				return 1;
+			}
+
+			@Override
+			int getPendingCount(int lane) {
+				return ElasticEventsQueue.this.getPendingCount();
+			}
+
+			@Override
+			RegistrationEvent<?> getPending(int lane, int index) {
+				return ElasticEventsQueue.this.getPending(index);
+			}
+
+			@Override
+			void removePending(int lane, int index) {
+				ElasticEventsQueue.this.removePending(index);
+			}
+		};
+	}
+
+	@Override
+	protected boolean coalesce(RegistrationEvent<? extends Peripheral> data) {
+		EventCoalescer coalescer = this.coalescer;
+		return coalescer != null && coalescer.coalesce(data);
+	}
+}
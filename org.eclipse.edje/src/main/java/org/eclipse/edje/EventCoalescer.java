@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * Collapses the pending {@link RegistrationEvent} of a queue that cancel each
+ * other out. When an event is added while the opposite event for the same
+ * peripheral (same registry, same registered class) is still pending, both
+ * events are dropped: the listeners have nothing to be notified of since the
+ * peripheral is back to the state they already know.
+ * <p>
+ * As a consequence, at most one event per peripheral and registered class is
+ * pending in the queue: the one that leads to its latest state.
+ * <p>
+ * Each queue gives access to its pending events, stored in one or several
+ * lanes, by implementing the abstract methods. All the methods are called with
+ * the queue lock held.
+ */
+abstract class EventCoalescer {
+
+	/**
+	 * Gets the number of lanes of the queue.
+	 *
+	 * @return the number of lanes, 1 for a single FIFO
+	 */
+	abstract int getLaneCount();
+
+	/**
+	 * Gets the number of pending events in a lane.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @return the number of pending events
+	 */
+	abstract int getPendingCount(int lane);
+
+	/**
+	 * Gets a pending event of a lane.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param index
+	 *            the index of the event, 0 for the oldest one
+	 * @return the pending event
+	 */
+	abstract RegistrationEvent<?> getPending(int lane, int index);
+
+	/**
+	 * Removes a pending event of a lane, keeping the order of the others.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param index
+	 *            the index of the event, 0 for the oldest one
+	 */
+	abstract void removePending(int lane, int index);
+
+	/**
+	 * Collapses the given event with the latest pending event of the same
+	 * target if they cancel each other out.
+	 *
+	 * @param data
+	 *            the event being added
+	 * @return <code>true</code> if the pending event has been removed and the
+	 *         given event must not be added, <code>false</code> otherwise
+	 */
+	final boolean coalesce(RegistrationEvent<?> data) {
+		for (int lane = getLaneCount(); --lane >= 0;) {
+			int index = indexOfLatest(lane, data);
+			if (index != -1) {
+				if (getPending(lane, index).isRegistration() != data.isRegistration()) {
+					removePending(lane, index);
+					return true;
+				}
+				// same kind of event: keep both
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Looks for the lane holding the latest pending event with the same target
+	 * than the given event. The pending events of a same target are expected
+	 * to be in a single lane.
+	 *
+	 * @param data
+	 *            the event being added
+	 * @return the lane, or -1 if no event of the same target is pending
+	 */
+	final int laneOfLatest(RegistrationEvent<?> data) {
+		for (int lane = getLaneCount(); --lane >= 0;) {
+			if (indexOfLatest(lane, data) != -1) {
+				return lane;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks for the latest pending event of a lane with the same target than
+	 * the given event.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param data
+	 *            the event being added
+	 * @return the index of the pending event, or -1 if there is none
+	 */
+	private int indexOfLatest(int lane, RegistrationEvent<?> data) {
+		for (int index = getPendingCount(lane); --index >= 0;) {
+			if (isSameTarget(getPending(lane, index), data)) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Tells whether two events are about the same peripheral, registered with
+	 * the same class in the same registry.
+	 *
+	 * @param pending
+	 *            a pending event
+	 * @param data
+	 *            the event being added
+	 * @return <code>true</code> if both events have the same target
+	 */
+	private static boolean isSameTarget(RegistrationEvent<?> pending, RegistrationEvent<?> data) {
+		return pending.registry == data.registry && pending.getRegisteredClass() == data.getRegisteredClass()
+				&& data.getPeripheral().equals(pending.getPeripheral());
+	}
+}
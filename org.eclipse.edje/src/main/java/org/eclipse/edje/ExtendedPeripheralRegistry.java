@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import org.eclipse.edje.util.Pump;
+
+/**
+ * Optional features of a {@link PeripheralRegistry}: several event partitions,
+ * synchronous listeners, replay of past events and descriptor changes. The
+ * {@link PeripheralManager} uses them when its registry implements this
+ * interface; otherwise the events are notified by a single partition, all the
+ * listeners by the event pump, and the replay is not supported.
+ */
+public interface ExtendedPeripheralRegistry extends PeripheralRegistry {
+
+	/**
+	 * Finalize the initialization of the registry like
+	 * {@link #start(Pump)}, with the event pumps of all the partitions. The
+	 * {@link PeripheralManager} calls this method instead of
+	 * {@link #start(Pump)}, which must still be called with the first pump so
+	 * that the static devices are populated into the registry. This method is
+	 * called once: the stopped event threads are started again by
+	 * {@link #restartPumps()}.
+	 *
+	 * @param pumps
+	 *            the event pumps of the partitions, to be started, or null if
+	 *            there is no event thread
+	 */
+	void start(Pump<RegistrationEvent<?>>[] pumps);
+
+	/**
+	 * Waits until all the pending registration events have been executed by
+	 * the event pumps started by {@link #start(Pump[])}.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds
+	 * @return <code>true</code> if there is no more pending event,
+	 *         <code>false</code> if the timeout has elapsed before
+	 */
+	boolean drain(long timeout);
+
+	/**
+	 * Stops the event threads started by {@link #start(Pump[])}, if any. The
+	 * pending events are kept: they are executed once the threads are started
+	 * again by {@link #restartPumps()}.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait for the threads to terminate, in
+	 *            milliseconds
+	 * @return <code>true</code> if the event threads are stopped,
+	 *         <code>false</code> if one is still running after the timeout
+	 */
+	boolean stopPumps(long timeout);
+
+	/**
+	 * Starts again the event threads stopped by {@link #stopPumps(long)}.
+	 * Unlike {@link #start(Pump)}, the static devices are not populated again.
+	 * The threads that are still running are kept.
+	 */
+	void restartPumps();
+
+	/**
+	 * Notifies the registry that the {@link HardwareDescriptor} of a
+	 * registered peripheral, or its properties, have changed, so that the
+	 * permissions checked on the peripheral are built again.
+	 *
+	 * @param peripheral
+	 *            the registered peripheral
+	 */
+	void descriptorChanged(Peripheral peripheral);
+
+	/**
+	 * Value of the <code>fromSequence</code> argument of
+	 * {@link #addRegistrationListener(RegistrationListener, Class, long)} to
+	 * replay a registration event for each currently registered peripheral.
+	 */
+	long SNAPSHOT = -1;
+
+	/**
+	 * Adds the given {@link RegistrationListener} like
+	 * {@link #addRegistrationListener(RegistrationListener, Class)}, and
+	 * atomically replays past events to it, on the calling thread:
+	 * <ul>
+	 * <li>if <code>fromSequence</code> is {@link #SNAPSHOT}, a registration
+	 * event for each peripheral currently registered,</li>
+	 * <li>otherwise, the journaled events from the given sequence number
+	 * (see {@link RegistrationEvent#getSequenceNumber()}).</li>
+	 * </ul>
+	 * Then the listener is notified of the events that follow the replayed
+	 * ones: none is missed nor notified twice.
+	 *
+	 * @param listener
+	 *            the registration listener
+	 * @param peripheralType
+	 *            the type of the peripherals to be listened for
+	 * @param fromSequence
+	 *            the sequence number of the first event to replay, or
+	 *            {@link #SNAPSHOT}
+	 * @throws IllegalArgumentException
+	 *             if the events from the given sequence number are not
+	 *             journaled anymore
+	 */
+	<P extends Peripheral> void addRegistrationListener(RegistrationListener<P> listener, Class<P> peripheralType,
+			long fromSequence);
+
+	/**
+	 * Executes the registration event for the
+	 * {@link SynchronousRegistrationListener} only. This method is called by
+	 * the thread which has registered or unregistered the peripheral.
+	 *
+	 * @param pump
+	 *            the pump of the registration events, used to report the
+	 *            listeners errors
+	 * @param data
+	 *            the registration event to execute
+	 */
+	public <P extends Peripheral> void executeSynchronousEvent(Pump<RegistrationEvent<?>> pump,
+			RegistrationEvent<P> data);
+
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import org.eclipse.edje.util.MultiLaneFIFOQueue;
+
+/**
+ * Queue of {@link RegistrationEvent} with priority lanes selected by a
+ * {@link RegistrationLaneSelector}. The events of a same peripheral are kept in
+ * order: while an event of the peripheral is pending, the next ones are added
+ * to its lane, whatever the lane selected for them. Pending events that cancel
+ * each other out may be collapsed (see {@link EventCoalescer}).
+ */
+class LaneEventsQueue extends MultiLaneFIFOQueue<RegistrationEvent<? extends Peripheral>> {
+
+	/**
+	 * The selector of the lanes.
+	 */
+	private final RegistrationLaneSelector selector;
+
+	/**
+	 * Whether the pending register/unregister pairs are collapsed.
+	 */
+	private final boolean coalesce;
+
+	/**
+	 * The view of the pending events, used to find the lane of a peripheral and
+	 * to collapse its events.
+	 */
+	private final EventCoalescer coalescer;
+
+	/**
+	 * Creates a queue of registration events with priority lanes.
+	 *
+	 * @param laneCount
+	 *            the number of lanes
+	 * @param bufferSize
+	 *            the FIFO size of each lane
+	 * @param weights
+	 *            the weights of the lanes, or null for strict priority
+	 * @param selector
+	 *            the selector of the lanes
+	 * @param coalesce
+	 *            whether the pending register/unregister pairs are collapsed
+	 */
+	LaneEventsQueue(int laneCount, int bufferSize, int[] weights, RegistrationLaneSelector selector,
+			boolean coalesce) {
+		super(laneCount, bufferSize, weights);
+		this.selector = selector;
+		this.coalesce = coalesce;
+		this.coalescer = new EventCoalescer() {
+			@Override
+			int getLaneCount() {
+				return LaneEventsQueue.this.getLaneCount();
+			}
+
+			@Override
+			int getPendingCount(int lane) {
+				return LaneEventsQueue.this.getPendingCount(lane);
+			}
+
+			@Override
+			RegistrationEvent<?> getPending(int lane, int index) {
+				return LaneEventsQueue.this.getPending(lane, index);
+			}
+
+			@Override
+			void removePending(int lane, int index) {
+				LaneEventsQueue.this.removePending(lane, index);
+			}
+		};
+	}
+
+	@Override
+	protected int selectLane(RegistrationEvent<? extends Peripheral> data) {
+		int laneCount = getLaneCount();
+		int lane = selector.getLane(data, laneCount);
+		if (lane < 0 || lane >= laneCount) {
+			throw new IndexOutOfBoundsException(Integer.toString(lane));
+		}
+		// do not overtake a pending event of the same peripheral, nor be
+		// overtaken by it when the lanes are weighted: go behind it
+		int pendingLane = coalescer.laneOfLatest(data);
+		return pendingLane != -1 ? pendingLane : lane;
+	}
+
+	@Override
+	protected boolean coalesce(RegistrationEvent<? extends Peripheral> data) {
+		// the pending events of a same peripheral are in a single lane
+		return coalesce && coalescer.coalesce(data);
+	}
+}
@@ -15,8 +15,10 @@ package org.eclipse.edje;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.Iterator;
 
+import org.eclipse.edje.util.ElasticFIFOQueue;
 import org.eclipse.edje.util.FixedLengthFIFOQueue;
 import org.eclipse.edje.util.Pump;
+import org.eclipse.edje.util.Queue;
 import org.eclipse.edje.util.Util;
 
 /**
@@ -37,19 +39,45 @@ public class PeripheralManager {
 	private static final int DEFAULT_EVENT_BUFFER_SIZE = 10;
 
 	/**
-	 * When null, the event pump mechanism is disabled.
+	 * The event queue of each partition. When null, the event pump mechanism
+	 * is disabled or all the listeners are notified inline.
 	 */
-	private static FixedLengthFIFOQueue<RegistrationEvent<? extends Peripheral>> EventsQueue;
+	private static Queue<RegistrationEvent<? extends Peripheral>>[] EventsQueues;
+
+	/**
+	 * The event pump of each partition. When null, the notification mechanism
+	 * is disabled.
+	 */
+	private static Pump<RegistrationEvent<?>>[] EventsPumps;
+
+	/**
+	 * Selects the partition of the events, null when there is a single
+	 * partition.
+	 */
+	private static RegistrationPartitioner EventsPartitioner;
 
 	/**
 	 * Context local storage instance.
 	 */
 	private static PeripheralRegistry PeripheralRegistry;
 
+	/**
+	 * The registry when it implements the optional features, null otherwise.
+	 */
+	private static ExtendedPeripheralRegistry ExtendedRegistry;
+
 	static {
 		initializePeripheralRegistry();
-		Pump<RegistrationEvent<?>> pump = initializeNotificationEventPump();
-		PeripheralRegistry.start(pump);
+		Pump<RegistrationEvent<?>>[] pumps = initializeNotificationEventPumps();
+		EventsPumps = pumps;
+		// no event thread when all the listeners are notified inline
+		boolean threads = EventsQueues != null;
+		ExtendedPeripheralRegistry extendedRegistry = ExtendedRegistry;
+		if (extendedRegistry != null) {
+			extendedRegistry.start(threads ? pumps : null);
+		} else {
+			PeripheralRegistry.start(threads ? pumps[0] : null);
+		}
 	}
 
 	/**
@@ -60,12 +88,14 @@ public class PeripheralManager {
 
 	/**
 	 * Adds the given {@link RegistrationListener} to be notified when a
-	 * peripheral of the given type is registered or unregistered. If there is a
-	 * security manager, its
-	 * {@link SecurityManager#checkPermission(java.security.Permission)} method
-	 * is called with the {@link PeripheralManagerPermission#READ} name and the
-	 * peripheral type. The listener may be registered multiple times on
-	 * different peripheral types.
+	 * peripheral of the given type is registered or unregistered. The
+	 * {@link PeripheralManagerPermission} with the
+	 * {@link PeripheralManagerPermission#READ} name and the peripheral type is
+	 * checked by the installed {@link AuthorizationPolicy}, or by the security
+	 * manager if there is no policy (see {@link Authorization}). The listener
+	 * may be registered multiple times on
+	 * different peripheral types. A {@link SynchronousRegistrationListener} is
+	 * notified on the thread that registers or unregisters the peripheral.
 	 *
 	 * @param <P>
 	 *            the type of the peripherals to be listened for
@@ -79,6 +109,101 @@ public class PeripheralManager {
 		PeripheralRegistry.addRegistrationListener(listener, peripheralType);
 	}
 
+	/**
+	 * Adds the given {@link RegistrationListener} like
+	 * {@link #addRegistrationListener(RegistrationListener, Class)}, and first
+	 * notifies it, on the calling thread, of the registered peripherals of the
+	 * given type. No registration or unregistration can be missed nor notified
+	 * twice between this initial state and the following events.
+	 *
+	 * @param <P>
+	 *            the type of the peripherals to be listened for
+	 * @param listener
+	 *            the registration listener
+	 * @param peripheralType
+	 *            the type of the peripherals to be listened for
+	 * @throws UnsupportedOperationException
+	 *             if the registry is not an {@link ExtendedPeripheralRegistry}
+	 */
+	public static <P extends Peripheral> void addRegistrationListenerWithSnapshot(RegistrationListener<P> listener,
+			Class<P> peripheralType) {
+		extendedRegistry().addRegistrationListener(listener, peripheralType, ExtendedPeripheralRegistry.SNAPSHOT);
+	}
+
+	/**
+	 * Adds the given {@link RegistrationListener} like
+	 * {@link #addRegistrationListener(RegistrationListener, Class)}, and first
+	 * notifies it, on the calling thread, of the journaled events from the
+	 * given sequence number (see {@link RegistrationEvent#getSequenceNumber()}).
+	 * The journal keeps the last events; its size is set by the
+	 * <code>org.eclipse.edje.eventpump.journal.size</code> property.
+	 *
+	 * @param <P>
+	 *            the type of the peripherals to be listened for
+	 * @param listener
+	 *            the registration listener
+	 * @param peripheralType
+	 *            the type of the peripherals to be listened for
+	 * @param fromSequence
+	 *            the sequence number of the first event to replay
+	 * @throws IllegalArgumentException
+	 *             if the events from the given sequence number are not
+	 *             journaled anymore
+	 * @throws UnsupportedOperationException
+	 *             if the registry is not an {@link ExtendedPeripheralRegistry}
+	 */
+	public static <P extends Peripheral> void addRegistrationListener(RegistrationListener<P> listener,
+			Class<P> peripheralType, long fromSequence) {
+		if (fromSequence < 0) {
+			throw new IllegalArgumentException();
+		}
+		extendedRegistry().addRegistrationListener(listener, peripheralType, fromSequence);
+	}
+
+	/**
+	 * Gets the registry for the optional features.
+	 *
+	 * @return the registry
+	 * @throws UnsupportedOperationException
+	 *             if the registry does not implement the optional features
+	 */
+	private static ExtendedPeripheralRegistry extendedRegistry() {
+		ExtendedPeripheralRegistry extendedRegistry = ExtendedRegistry;
+		if (extendedRegistry == null) {
+			throw new UnsupportedOperationException();
+		}
+		return extendedRegistry;
+	}
+
+	/**
+	 * Subscribes the given {@link RegistrationSubscriber} to the registration
+	 * events of the peripherals of the given type. The subscriber is notified
+	 * only of the events it requests through the {@link RegistrationSubscription}
+	 * given to {@link RegistrationSubscriber#onSubscribe(RegistrationSubscription)}.
+	 * At most <code>bufferSize</code> events are kept while they are not
+	 * requested: further events terminate the subscription with an error.
+	 * The same permission checks apply as for
+	 * {@link #addRegistrationListener(RegistrationListener, Class)}.
+	 *
+	 * @param <P>
+	 *            the type of the peripherals to be listened for
+	 * @param peripheralType
+	 *            the type of the peripherals to be listened for
+	 * @param subscriber
+	 *            the registration subscriber
+	 * @param bufferSize
+	 *            the maximum number of pending events
+	 * @throws IllegalArgumentException
+	 *             if <code>bufferSize</code> is not strictly positive
+	 */
+	public static <P extends Peripheral> void subscribe(Class<P> peripheralType, RegistrationSubscriber<P> subscriber,
+			int bufferSize) {
+		RegistrationSubscription<P> subscription = new RegistrationSubscription<>(subscriber, bufferSize);
+		// the events notified before the first request are buffered
+		addRegistrationListener(subscription.listener, peripheralType);
+		subscriber.onSubscribe(subscription);
+	}
+
 	/**
 	 * Removes the given {@link RegistrationListener} from the list of listeners
 	 * that are notified when a peripheral is registered or unregistered. The
@@ -95,11 +220,11 @@ public class PeripheralManager {
 	}
 
 	/**
-	 * Registers a new peripheral with the given type. If there is a security
-	 * manager, its
-	 * {@link SecurityManager#checkPermission(java.security.Permission)} method
-	 * is called with {@link PeripheralManagerPermission#MODIFY} name and the
-	 * peripheral type.
+	 * Registers a new peripheral with the given type. The
+	 * {@link PeripheralManagerPermission} with the
+	 * {@link PeripheralManagerPermission#MODIFY} name and the peripheral type
+	 * is checked by the installed {@link AuthorizationPolicy}, or by the
+	 * security manager if there is no policy (see {@link Authorization}).
 	 *
 	 * @param <P>
 	 *            the type of the peripheral to be registered
@@ -108,47 +233,101 @@ public class PeripheralManager {
 	 * @param peripheral
 	 *            the peripheral to be registered
 	 * @throws SecurityException
-	 *             if a security manager exists and it does not allow the caller
-	 *             to register a peripheral with the given type.
+	 *             if the policy or the security manager does not allow the
+	 *             caller to register a peripheral with the given type.
 	 * @throws IllegalArgumentException
 	 *             if the peripheral has already been registered
 	 */
 	public static <P extends Peripheral> void register(Class<P> peripheralType, P peripheral) {
 		PeripheralRegistry.checkModify(peripheralType, peripheral);
 		PeripheralRegistry registry = PeripheralRegistry;
-		FixedLengthFIFOQueue<RegistrationEvent<? extends Peripheral>> queue = EventsQueue;
-		RegistrationEvent<P> event = registry.register(peripheralType, peripheral, queue != null, false);
+		Pump<RegistrationEvent<?>>[] pumps = EventsPumps;
+		RegistrationEvent<P> event = registry.register(peripheralType, peripheral, pumps != null, false);
 		if (event != null) {
-			queue.add(event);
+			dispatch(registry, pumps, event);
 		}
 	}
 
 	/**
-	 * Unregisters the given peripheral. If there is a security manager, its
-	 * {@link SecurityManager#checkPermission(java.security.Permission)} method
-	 * is called with {@link PeripheralManagerPermission#MODIFY} name and the
-	 * peripheral type on which it has been registered. Some peripherals are
+	 * Unregisters the given peripheral. The
+	 * {@link PeripheralManagerPermission} with the
+	 * {@link PeripheralManagerPermission#MODIFY} name and the peripheral type
+	 * on which it has been registered is checked by the installed
+	 * {@link AuthorizationPolicy}, or by the security manager if there is no
+	 * policy (see {@link Authorization}). Some peripherals are
 	 * registered by the underlying platform and cannot be unregistered.
 	 *
 	 * @param peripheral
 	 *            the peripheral to be unregistered
 	 * @throws SecurityException
-	 *             if a security manager exists and it does not allow the caller
-	 *             to unregister a peripheral
+	 *             if the policy or the security manager does not allow the
+	 *             caller to unregister a peripheral
 	 */
 	public static <P extends Peripheral> void unregister(P peripheral) {
 		PeripheralRegistry registry = PeripheralRegistry;
 		Class<P> registeredClass = registry.getRegisteredClass(peripheral);
 		if (registeredClass != null) {
 			PeripheralRegistry.checkModify(registeredClass, peripheral);
-			FixedLengthFIFOQueue<RegistrationEvent<? extends Peripheral>> queue = EventsQueue;
-			RegistrationEvent<P> event = registry.unregister(registeredClass, peripheral, queue != null);
+			Pump<RegistrationEvent<?>>[] pumps = EventsPumps;
+			RegistrationEvent<P> event = registry.unregister(registeredClass, peripheral, pumps != null);
 			if (event != null) {
-				queue.add(event);
+				dispatch(registry, pumps, event);
 			}
 		}
 	}
 
+	/**
+	 * Notifies that the {@link HardwareDescriptor} of a registered peripheral,
+	 * or its properties, have changed. The permissions checked on the
+	 * peripheral are built once per registration and reused, whatever the
+	 * descriptor returned by {@link Peripheral#getDescriptor()}: the driver
+	 * must call this method when the descriptor properties change.
+	 *
+	 * @param peripheral
+	 *            the registered peripheral
+	 */
+	public static void descriptorChanged(Peripheral peripheral) {
+		ExtendedPeripheralRegistry extendedRegistry = ExtendedRegistry;
+		if (extendedRegistry != null) {
+			extendedRegistry.descriptorChanged(peripheral);
+		}
+	}
+
+	/**
+	 * Dispatches a registration event: the
+	 * {@link SynchronousRegistrationListener} are notified on the current
+	 * thread, then the event is queued in its partition for the other
+	 * listeners, or they are notified on the current thread too when there is
+	 * no event queue.
+	 *
+	 * @param registry
+	 *            the registry which has created the event
+	 * @param pumps
+	 *            the events pumps of the partitions
+	 * @param event
+	 *            the event to dispatch
+	 */
+	private static <P extends Peripheral> void dispatch(PeripheralRegistry registry,
+			Pump<RegistrationEvent<?>>[] pumps, RegistrationEvent<P> event) {
+		int partition = 0;
+		RegistrationPartitioner partitioner = EventsPartitioner;
+		if (partitioner != null) {
+			partition = partitioner.getPartition(event.getRegisteredClass(), pumps.length);
+		}
+		Pump<RegistrationEvent<?>> pump = pumps[partition];
+		ExtendedPeripheralRegistry extendedRegistry = ExtendedRegistry;
+		if (extendedRegistry != null) {
+			extendedRegistry.executeSynchronousEvent(pump, event);
+		}
+		Queue<RegistrationEvent<? extends Peripheral>>[] queues = EventsQueues;
+		if (queues != null) {
+			queues[partition].add(event);
+		} else {
+			// inline dispatch
+			registry.executeEvent(pump, event);
+		}
+	}
+
 	/**
 	 * List all registered peripherals. Actually, the list is filtered out of
 	 * the peripherals that the caller doesn't have the
@@ -212,6 +391,141 @@ public class PeripheralManager {
 		return null;
 	}
 
+	/**
+	 * Waits for a peripheral that is compatible with the given class and that
+	 * has the specified name to be registered. If such a peripheral is already
+	 * registered, it is returned immediately, like
+	 * {@link #find(Class, String)}. Otherwise, the calling thread waits for
+	 * its registration, notified by a {@link SynchronousRegistrationListener}:
+	 * no registration can be missed between the search and the wait.
+	 * <p>
+	 * When the notification mechanism is disabled, this method does not wait.
+	 * <p>
+	 * When the calling thread is interrupted while waiting, this method returns
+	 * <code>null</code> with the interrupted status of the thread set, so that
+	 * the caller can tell the interruption from a timeout with
+	 * {@link Thread#isInterrupted()}.
+	 *
+	 * @param <P>
+	 *            the type of peripherals to wait for
+	 * @param peripheralType
+	 *            the type of the peripheral to wait for
+	 * @param peripheralName
+	 *            the name of the peripheral to wait for
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds
+	 * @return a peripheral of the given type, with the specified name, or
+	 *         <code>null</code> if no such peripheral has been registered
+	 *         before the timeout has elapsed or the calling thread has been
+	 *         interrupted
+	 * @throws NullPointerException
+	 *             if the specified name is null
+	 */
+	public static <P extends Peripheral> P awaitRegistration(Class<P> peripheralType, String peripheralName,
+			long timeout) {
+		if (EventsPumps == null) {
+			// no registration event
+			return find(peripheralType, peripheralName);
+		}
+		RegistrationWaiter<P> waiter = new RegistrationWaiter<>(peripheralName);
+		// listen before searching: a registration cannot be missed
+		addRegistrationListener(waiter, peripheralType);
+		try {
+			P peripheral = find(peripheralType, peripheralName);
+			if (peripheral != null) {
+				return peripheral;
+			}
+			return waiter.await(timeout);
+		} finally {
+			removeRegistrationListener(waiter);
+		}
+	}
+
+	/**
+	 * Gets the maximum number of registration events that have been pending at
+	 * once in an event queue. The event queues record it when their capacity
+	 * is elastic, that is when the
+	 * <code>org.eclipse.edje.eventpump.maxSize</code> property is greater than
+	 * the <code>org.eclipse.edje.eventpump.size</code> property. The capacity cannot
+	 * be elastic when the events are dispatched in several lanes (see the
+	 * <code>org.eclipse.edje.eventpump.lanes</code> property): this
+	 * combination is rejected when the peripheral manager is initialized.
+	 *
+	 * @return the highest high-water mark of the event queues of the
+	 *         partitions, or -1 if it is not recorded
+	 */
+	public static int getEventsHighWaterMark() {
+		Queue<RegistrationEvent<? extends Peripheral>>[] queues = EventsQueues;
+		int highWaterMark = -1;
+		if (queues != null) {
+			for (Queue<RegistrationEvent<? extends Peripheral>> queue : queues) {
+				if (queue instanceof ElasticFIFOQueue) {
+					highWaterMark = Math.max(highWaterMark, ((ElasticFIFOQueue<?>) queue).getHighWaterMark());
+				}
+			}
+		}
+		return highWaterMark;
+	}
+
+	/**
+	 * Waits until all the pending registration events have been dispatched to
+	 * the listeners. This method returns immediately when the notification
+	 * mechanism is disabled or when the listeners are notified inline.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds
+	 * @return <code>true</code> if there is no more pending event,
+	 *         <code>false</code> if the timeout has elapsed before
+	 */
+	public static boolean drainEvents(long timeout) {
+		if (EventsQueues == null) {
+			return true;
+		}
+		ExtendedPeripheralRegistry extendedRegistry = ExtendedRegistry;
+		if (extendedRegistry != null) {
+			return extendedRegistry.drain(timeout);
+		}
+		// single partition
+		return EventsPumps[0].drain(timeout);
+	}
+
+	/**
+	 * Stops the threads which dispatch the registration events to the
+	 * listeners. The events of the registrations and unregistrations done
+	 * meanwhile are kept in the event queues, until {@link #restartEvents()}.
+	 * This method returns immediately when the notification mechanism is
+	 * disabled or when the listeners are notified inline.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait for the threads to terminate, in
+	 *            milliseconds
+	 * @return <code>true</code> if the threads are stopped, <code>false</code>
+	 *         if one is still running after the timeout
+	 * @throws UnsupportedOperationException
+	 *             if the registry is not an {@link ExtendedPeripheralRegistry}
+	 */
+	public static boolean stopEvents(long timeout) {
+		if (EventsQueues == null) {
+			return true;
+		}
+		return extendedRegistry().stopPumps(timeout);
+	}
+
+	/**
+	 * Starts again the threads stopped by {@link #stopEvents(long)}. The
+	 * pending events are then dispatched to the listeners. This method does
+	 * nothing when the notification mechanism is disabled or when the
+	 * listeners are notified inline.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the registry is not an {@link ExtendedPeripheralRegistry}
+	 */
+	public static void restartEvents() {
+		if (EventsQueues != null) {
+			extendedRegistry().restartPumps();
+		}
+	}
+
 	/**
 	 * Initializes the PeripheralRegistry.
 	 */
@@ -234,21 +548,156 @@ public class PeripheralManager {
 			// no custom PeripheralRegistry or error during its instantiation
 			PeripheralRegistry = new DefaultPeripheralRegistry();
 		}
+		if (PeripheralRegistry instanceof ExtendedPeripheralRegistry) {
+			ExtendedRegistry = (ExtendedPeripheralRegistry) PeripheralRegistry;
+		}
 	}
 
 	/**
-	 * Creates the notification event pump.
+	 * Creates the selector of the lanes of the events queues, set by the
+	 * <code>laneSelector</code> property. By default, the unregistrations are
+	 * queued in the first lane and the registrations in the last one.
+	 *
+	 * @param prefix
+	 *            the prefix of the event pump properties
+	 * @return the lane selector
 	 */
-	private static Pump<RegistrationEvent<?>> initializeNotificationEventPump() {
-		// start the dynamic event pump if required
+	private static RegistrationLaneSelector initializeLaneSelector(String prefix) {
+		String selectorClass = System.getProperty(new StringBuilder(prefix).append("laneSelector").toString(), null);
+		if (selectorClass != null) {
+			try {
+				return (RegistrationLaneSelector) Class.forName(selectorClass).newInstance();
+			} catch (Throwable e) {
+				throw new AssertionError(e);
+			}
+		} else {
+			// default selector: the unregistrations first
+			return new RegistrationLaneSelector() {
+				@Override
+				public int getLane(RegistrationEvent<?> event, int laneCount) {
+					return event.isRegistration() ? laneCount - 1 : 0;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Parses the <code>laneWeights</code> property: a comma-separated list of
+	 * the maximum number of consecutive events polled from each lane when the
+	 * other lanes are not empty.
+	 *
+	 * @param prefix
+	 *            the prefix of the event pump properties
+	 * @param lanes
+	 *            the number of lanes
+	 * @return the weights of the lanes, or null if the lanes are polled by
+	 *         strict priority
+	 * @throws AssertionError
+	 *             if the property does not give a weight per lane
+	 */
+	private static int[] parseLaneWeights(String prefix, int lanes) {
+		String weightsSpec = System.getProperty(new StringBuilder(prefix).append("laneWeights").toString(), null);
+		if (weightsSpec == null) {
+			// strict priority
+			return null;
+		}
+		String[] weightsStrings = weightsSpec.split(",");
+		if (weightsStrings.length != lanes) {
+			throw new AssertionError(weightsSpec);
+		}
+		int[] weights = new int[lanes];
+		for (int i = lanes; --i >= 0;) {
+			weights[i] = Integer.parseInt(weightsStrings[i].trim());
+		}
+		return weights;
+	}
+
+	/**
+	 * Creates the partitioner of the events, set by the
+	 * <code>partitioner</code> property. By default, the registered classes
+	 * are spread over the partitions by the hash code of their name.
+	 *
+	 * @param prefix
+	 *            the prefix of the event pump properties
+	 * @return the partitioner
+	 */
+	private static RegistrationPartitioner initializePartitioner(String prefix) {
+		String partitionerClass = System.getProperty(new StringBuilder(prefix).append("partitioner").toString(),
+				null);
+		if (partitionerClass != null) {
+			try {
+				return (RegistrationPartitioner) Class.forName(partitionerClass).newInstance();
+			} catch (Throwable e) {
+				throw new AssertionError(e);
+			}
+		} else {
+			// default partitioner: spread the registered classes
+			return new RegistrationPartitioner() {
+				@Override
+				public int getPartition(Class<? extends Peripheral> registeredClass, int partitionCount) {
+					return (registeredClass.getName().hashCode() & Integer.MAX_VALUE) % partitionCount;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Creates the events queue of a partition, depending on the
+	 * <code>size</code>, <code>maxSize</code>, <code>lanes</code> and
+	 * <code>coalesce</code> properties.
+	 *
+	 * @param prefix
+	 *            the prefix of the event pump properties
+	 * @return the events queue
+	 * @throws AssertionError
+	 *             if both several lanes and an elastic capacity are requested
+	 */
+	private static Queue<RegistrationEvent<? extends Peripheral>> createEventsQueue(String prefix) {
+		int size = Integer.getInteger(new StringBuilder(prefix).append("size").toString(), DEFAULT_EVENT_BUFFER_SIZE);
+
+		boolean coalesce = Boolean.getBoolean(new StringBuilder(prefix).append("coalesce").toString());
+		int lanes = Integer.getInteger(new StringBuilder(prefix).append("lanes").toString(), 1);
+		int maxSize = Integer.getInteger(new StringBuilder(prefix).append("maxSize").toString(), size);
+		if (lanes > 1) {
+			if (maxSize > size) {
+				// the lanes have a fixed capacity: an elastic one cannot be
+				// honored
+				throw new AssertionError("lanes with maxSize");
+			}
+			return new LaneEventsQueue(lanes, size, parseLaneWeights(prefix, lanes), initializeLaneSelector(prefix),
+					coalesce);
+		} else if (maxSize > size) {
+			// grows by segments of the initial size under bursts
+			return new ElasticEventsQueue(size, size, maxSize, coalesce);
+		} else if (coalesce) {
+			// pending register/unregister pairs are collapsed
+			return new CoalescingEventsQueue(size);
+		} else {
+			return new FixedLengthFIFOQueue<>(size);
+		}
+	}
+
+	/**
+	 * Creates the notification event pumps, one per partition, and their
+	 * events queues unless the listeners are notified inline.
+	 *
+	 * @return the event pumps, or null if the notification mechanism is
+	 *         disabled
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Pump<RegistrationEvent<?>>[] initializeNotificationEventPumps() {
+		// start the dynamic event pumps if required
 		String prefix = "org.eclipse.edje.eventpump.";
 		boolean enable = Boolean.getBoolean(new StringBuilder(prefix).append("enabled").toString());
 
 		if (enable) {
-			int size = Integer.getInteger(new StringBuilder(prefix).append("size").toString(),
-					DEFAULT_EVENT_BUFFER_SIZE);
-
-			EventsQueue = new FixedLengthFIFOQueue<>(size);
+			int partitions = Integer.getInteger(new StringBuilder(prefix).append("partitions").toString(), 1);
+			// only an extended registry starts several pumps
+			if (partitions > 1 && ExtendedRegistry != null) {
+				EventsPartitioner = initializePartitioner(prefix);
+			} else {
+				partitions = 1;
+			}
 			UncaughtExceptionHandler exceptionHandler = null;
 			String handlerClass = System.getProperty(new StringBuilder(prefix).append("exceptionHandler").toString(),
 					null);
@@ -269,18 +718,105 @@ public class PeripheralManager {
 			}
 			int priority = Integer.getInteger(new StringBuilder(prefix).append("priority").toString(),
 					Thread.NORM_PRIORITY);
-			Pump<RegistrationEvent<?>> pump = new Pump<RegistrationEvent<?>>(EventsQueue, priority, exceptionHandler) {
+			// number of pending events moved at once from the queue
+			int batch = Integer.getInteger(new StringBuilder(prefix).append("batch").toString(), 1);
+			Queue<RegistrationEvent<? extends Peripheral>>[] queues = new Queue[partitions];
+			Pump<RegistrationEvent<?>>[] pumps = new Pump[partitions];
+			for (int i = 0; i < partitions; i++) {
+				Queue<RegistrationEvent<? extends Peripheral>> queue = createEventsQueue(prefix);
+				queues[i] = queue;
+				// each partition may have its own priority
+				int partitionPriority = Integer.getInteger(
+						new StringBuilder(prefix).append("priority.").append(i).toString(), priority);
+				pumps[i] = new Pump<RegistrationEvent<?>>(queue, partitionPriority, exceptionHandler, batch) {
 
-				@Override
-				public void execute(RegistrationEvent<? extends Peripheral> data) {
-					data.registry.executeEvent(this, data);
-				}
+					@Override
+					public void execute(RegistrationEvent<? extends Peripheral> data) {
+						data.registry.executeEvent(this, data);
+					}
 
-			};
-			return pump;
+				};
+			}
+			boolean inline = Boolean.getBoolean(new StringBuilder(prefix).append("inline").toString());
+			if (!inline) {
+				// otherwise all the listeners are notified on the registering
+				// thread: the queues are never used
+				EventsQueues = queues;
+			}
+			return pumps;
 		} else {
 			return null;
 		}
 	}
 
+	/**
+	 * Listener used by {@link PeripheralManager#awaitRegistration(Class, String, long)}
+	 * to be notified of the registration of a peripheral with a given name.
+	 *
+	 * @param <P>
+	 *            the type of the peripheral
+	 */
+	private static class RegistrationWaiter<P extends Peripheral> implements SynchronousRegistrationListener<P> {
+
+		/**
+		 * The name of the awaited peripheral.
+		 */
+		private final String peripheralName;
+
+		/**
+		 * The registered peripheral, null until it is registered.
+		 */
+		private P peripheral;
+
+		/**
+		 * @param peripheralName
+		 *            the name of the awaited peripheral
+		 */
+		RegistrationWaiter(String peripheralName) {
+			if (peripheralName == null) {
+				throw new NullPointerException();
+			}
+			this.peripheralName = peripheralName;
+		}
+
+		@Override
+		public synchronized void peripheralRegistered(RegistrationEvent<P> event) {
+			P registered = event.getPeripheral();
+			if (peripheral == null && peripheralName.equals(registered.getName())) {
+				peripheral = registered;
+				notifyAll();
+			}
+		}
+
+		@Override
+		public void peripheralUnregistered(RegistrationEvent<P> event) {
+			// nothing to do
+		}
+
+		/**
+		 * Waits for the registration of the peripheral. When the calling thread
+		 * is interrupted, its interrupted status is set again before returning.
+		 *
+		 * @param timeout
+		 *            the maximum time to wait in milliseconds
+		 * @return the registered peripheral, or null
+		 */
+		synchronized P await(long timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
+			while (peripheral == null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					// keep the interrupted status for the caller
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return peripheral;
+		}
+	}
 }
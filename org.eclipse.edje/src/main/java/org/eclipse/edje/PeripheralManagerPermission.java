@@ -13,9 +13,7 @@
 package org.eclipse.edje;
 
 import java.security.Permission;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.security.PermissionCollection;
 import java.util.Map;
 
 /**
@@ -45,7 +43,12 @@ public class PeripheralManagerPermission extends Permission {
 
 	private final String actions;
 
-	private final Map<String, String> constraints;
+	private final ConstraintMap constraints;
+
+	/**
+	 * The constraints compiled once, when this permission is used as a grant.
+	 */
+	private transient volatile ConstraintMatcher[] matchers;
 
 	/**
 	 * Creates a {@link PeripheralManagerPermission} permission with the
@@ -71,18 +74,8 @@ public class PeripheralManagerPermission extends Permission {
 			String action) {
 		super(buildName(peripheralType, peripheral));
 		this.actions = buildActions(action);
-		this.constraints = new HashMap<>();
-		this.constraints.put("name", peripheral.getName());
-		this.constraints.put("class", peripheralType.getName());
-		HardwareDescriptor<? extends Peripheral> desc = peripheral.getDescriptor();
-		if (desc != null) {
-			for (String name : desc.getPropertyNames()) {
-				String value = desc.getProperty(name);
-				if (value != null) {
-					this.constraints.put(name, value);
-				}
-			}
-		}
+		this.constraints = ConstraintMap.of(peripheral.getName(), peripheralType.getName(),
+				peripheral.getDescriptor());
 	}
 
 	private static String buildSpecString(Map<String, String> constraints) {
@@ -170,6 +163,11 @@ public class PeripheralManagerPermission extends Permission {
 	 * <li>"*suffix" : means any value ending with "suffix"
 	 * <li>"prefix*suffix" : means any value both starting with "prefix" and
 	 * ending with "suffix" with anything in between.
+	 * <li>"*infix*" : means any value containing "infix"
+	 * <li>"a*b*c" : more generally, each wildcard means any sequence of
+	 * characters.
+	 *
+	 * The constraints are compiled once, by this constructor.
 	 *
 	 * Specifying constraints means that the all the properties exposed by the
 	 * {@link HardwareDescriptor} of the {@link Peripheral} must fall under
@@ -185,7 +183,8 @@ public class PeripheralManagerPermission extends Permission {
 	public PeripheralManagerPermission(String spec, String actions) {
 		super(spec);
 		this.actions = buildActions(actions);
-		this.constraints = buildConstraints(spec);
+		this.constraints = ConstraintMap.parse(spec);
+		this.matchers = compileConstraints(this.constraints);
 	}
 
 	/**
@@ -206,45 +205,17 @@ public class PeripheralManagerPermission extends Permission {
 	public PeripheralManagerPermission(Map<String, String> constraints, String actions) {
 		super(buildSpecString(constraints));
 		this.actions = buildActions(actions);
-		this.constraints = constraints;
+		this.constraints = ConstraintMap.of(constraints);
+		this.matchers = compileConstraints(this.constraints);
 	}
 
-	private static List<String> split(String string, char separator)
-			throws NullPointerException, IndexOutOfBoundsException {
-		List<String> list = new ArrayList<>();
-		// manage first elements
-		int start = 0;
-		int end = string.indexOf(separator);
-
-		while (end != -1) {
-			String element = string.substring(start, end).trim();
-			if (element.length() > 0) {
-				list.add(element);
-			}
-			start = end + 1;
-			end = string.indexOf(separator, start);
-		}
-		// manage last element
-		String element = string.substring(start, string.length()).trim();
-		if (element.length() > 0) {
-			list.add(element);
+	private static ConstraintMatcher[] compileConstraints(ConstraintMap constraints) {
+		int size = constraints.size();
+		ConstraintMatcher[] matchers = new ConstraintMatcher[size];
+		for (int i = 0; i < size; i++) {
+			matchers[i] = ConstraintMatcher.compile(constraints.getKey(i), constraints.getValue(i));
 		}
-		return list;
-	}
-
-	private Map<String, String> buildConstraints(String spec) {
-		Map<String, String> constraints = new HashMap<>();
-		List<String> items = split(spec, ',');
-		for (String item : items) {
-			List<String> pair = split(item, '=');
-			if (pair.size() != 2) {
-				throw new IllegalArgumentException("Wrong format for spec: " + item);
-			}
-			String name = pair.get(0);
-			String value = pair.get(1);
-			constraints.put(name, value);
-		}
-		return constraints;
+		return matchers;
 	}
 
 	@Override
@@ -293,19 +264,11 @@ public class PeripheralManagerPermission extends Permission {
 			return true;
 		}
 
-		Map<String, String> thisConstraints = this.constraints;
-		if (thisConstraints != null) {
-			for (String property : thisConstraints.keySet()) {
-				String thisValue = thisConstraints.get(property);
-				if (thisValue != null) {
-					String thatValue = that.constraints.get(property);
-					if (thatValue == null) {
-						return false;
-					}
-					if (!match(thisValue, thatValue)) {
-						return false;
-					}
-				}
+		ConstraintMap thatConstraints = that.constraints;
+		for (ConstraintMatcher matcher : getMatchers()) {
+			String thatValue = thatConstraints.get(matcher.property);
+			if (thatValue == null || !matcher.matches(thatValue)) {
+				return false;
 			}
 		}
 
@@ -316,38 +279,60 @@ public class PeripheralManagerPermission extends Permission {
 	}
 
 	/**
-	 * Checks whether the specified value matches the specified constraint. The
-	 * constraint may contain:
-	 * <li>an optional prefix string
-	 * <li>an option wildcard character ('*')
-	 * <li>an optional suffix string
+	 * Returns a new collection for storing {@link PeripheralManagerPermission}
+	 * grants, indexed by their <code>class</code> and <code>name</code>
+	 * constraints.
 	 *
-	 * @param constraint
-	 *            the constraint to match with
-	 * @param value
-	 *            he string to compare to the constraint
-	 * @return
+	 * @return a new permission collection
 	 */
-	private boolean match(String constraint, String value) {
-		if (constraint.equals(value)) {
-			return true;
-		}
-		int wildcardOffset = constraint.indexOf('*');
-		if (wildcardOffset == -1) {
-			// they are not equals, and there's no wildcard in the constraint
+	@Override
+	public PermissionCollection newPermissionCollection() {
+		return new PeripheralManagerPermissionCollection();
+	}
+
+	/**
+	 * Gets the constraint on the given property.
+	 *
+	 * @param property
+	 *            the property name
+	 * @return the constraint, or null if the property is not constrained
+	 */
+	String getConstraint(String property) {
+		return constraints.get(property);
+	}
+
+	/**
+	 * Tells whether this grant may imply the given action on some peripheral
+	 * registered with the given class, i.e. whether its actions are compatible
+	 * and its <code>class</code> constraint, if any, matches the class.
+	 *
+	 * @param className
+	 *            the name of the registration class
+	 * @param otherActions
+	 *            the requested action
+	 * @return <code>false</code> if this grant implies no permission on the
+	 *         peripherals of the class
+	 */
+	boolean mayImplyClass(String className, String otherActions) {
+		if (!impliesActions(buildActions(otherActions))) {
 			return false;
 		}
-		int otherWildcardOffset = constraint.indexOf('*', wildcardOffset + 1);
-		if (otherWildcardOffset != -1) {
-			throw new IllegalArgumentException("Illegal constraint format: " + constraint);
-		}
-		// same prefix ?
-		if (!value.regionMatches(0, constraint, 0, wildcardOffset)) {
-			return false;
+		for (ConstraintMatcher matcher : getMatchers()) {
+			if (matcher.property.equals("class") && !matcher.matches(className)) {
+				return false;
+			}
 		}
-		int suffixLen = constraint.length() - wildcardOffset - 1;
+		return true;
+	}
 
-		return value.regionMatches(value.length() - suffixLen, constraint, wildcardOffset + 1, suffixLen);
+	private ConstraintMatcher[] getMatchers() {
+		ConstraintMatcher[] matchers = this.matchers;
+		if (matchers == null) {
+			// built from a peripheral, or deserialized
+			matchers = compileConstraints(this.constraints);
+			this.matchers = matchers;
+		}
+		return matchers;
 	}
 
 	private boolean impliesActions(String otherActions) {
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+import java.security.PermissionCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+
+/**
+ * A collection of {@link PeripheralManagerPermission} grants, indexed by their
+ * exact <code>class</code> constraint, or else by their exact
+ * <code>name</code> constraint. The other grants are kept in a wildcard
+ * bucket. A permission is implied if one of the candidate grants implies it:
+ * the grants indexed by its class, the grants indexed by its name and the
+ * wildcard bucket.
+ */
+@SuppressWarnings("serial")
+final class PeripheralManagerPermissionCollection extends PermissionCollection {
+
+	private static final String CLASS = "class";
+
+	private static final String NAME = "name";
+
+	/**
+	 * Grants with an exact class constraint, by class.
+	 */
+	private final HashMap<String, ArrayList<PeripheralManagerPermission>> byClass;
+
+	/**
+	 * Grants with an exact name constraint and no exact class constraint, by
+	 * name.
+	 */
+	private final HashMap<String, ArrayList<PeripheralManagerPermission>> byName;
+
+	/**
+	 * Grants without exact class nor name constraint.
+	 */
+	private final ArrayList<PeripheralManagerPermission> wildcards;
+
+	/**
+	 * All the grants, in the order they have been added.
+	 */
+	private final ArrayList<Permission> all;
+
+	PeripheralManagerPermissionCollection() {
+		this.byClass = new HashMap<>();
+		this.byName = new HashMap<>();
+		this.wildcards = new ArrayList<>();
+		this.all = new ArrayList<>();
+	}
+
+	@Override
+	public synchronized void add(Permission permission) {
+		if (!(permission instanceof PeripheralManagerPermission)) {
+			throw new IllegalArgumentException(String.valueOf(permission));
+		}
+		if (isReadOnly()) {
+			throw new SecurityException();
+		}
+		PeripheralManagerPermission grant = (PeripheralManagerPermission) permission;
+		String className = exact(grant.getConstraint(CLASS));
+		if (className != null) {
+			bucket(byClass, className).add(grant);
+		} else {
+			String name = exact(grant.getConstraint(NAME));
+			if (name != null) {
+				bucket(byName, name).add(grant);
+			} else {
+				wildcards.add(grant);
+			}
+		}
+		all.add(grant);
+	}
+
+	@Override
+	public synchronized boolean implies(Permission permission) {
+		if (!(permission instanceof PeripheralManagerPermission)) {
+			return false;
+		}
+		PeripheralManagerPermission that = (PeripheralManagerPermission) permission;
+		String className = that.getConstraint(CLASS);
+		if (className != null && implies(byClass.get(className), that)) {
+			return true;
+		}
+		String name = that.getConstraint(NAME);
+		if (name != null && implies(byName.get(name), that)) {
+			return true;
+		}
+		return implies(wildcards, that);
+	}
+
+	/**
+	 * Tells whether a grant of this collection may imply the given action on
+	 * some peripheral registered with the given class. The grants indexed by
+	 * another class are not candidates.
+	 *
+	 * @param className
+	 *            the name of the registration class
+	 * @param action
+	 *            the requested action
+	 * @return <code>false</code> if no peripheral of the class is granted the
+	 *         action
+	 */
+	synchronized boolean mayImplyClass(String className, String action) {
+		if (mayImplyClass(byClass.get(className), className, action) || mayImplyClass(wildcards, className, action)) {
+			return true;
+		}
+		for (ArrayList<PeripheralManagerPermission> grants : byName.values()) {
+			if (mayImplyClass(grants, className, action)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public synchronized Enumeration<Permission> elements() {
+		return Collections.enumeration(new ArrayList<>(all));
+	}
+
+	private static boolean implies(ArrayList<PeripheralManagerPermission> grants, PeripheralManagerPermission that) {
+		if (grants != null) {
+			for (PeripheralManagerPermission grant : grants) {
+				if (grant.implies(that)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean mayImplyClass(ArrayList<PeripheralManagerPermission> grants, String className,
+			String action) {
+		if (grants != null) {
+			for (PeripheralManagerPermission grant : grants) {
+				if (grant.mayImplyClass(className, action)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static ArrayList<PeripheralManagerPermission> bucket(
+			HashMap<String, ArrayList<PeripheralManagerPermission>> index, String key) {
+		ArrayList<PeripheralManagerPermission> grants = index.get(key);
+		if (grants == null) {
+			grants = new ArrayList<>();
+			index.put(key, grants);
+		}
+		return grants;
+	}
+
+	/**
+	 * Returns the given constraint if it matches a single value.
+	 *
+	 * @param constraint
+	 *            the constraint of a grant, may be null
+	 * @return the constraint, or null if it is null or has a wildcard
+	 */
+	private static String exact(String constraint) {
+		return constraint != null && constraint.indexOf('*') == -1 ? constraint : null;
+	}
+}
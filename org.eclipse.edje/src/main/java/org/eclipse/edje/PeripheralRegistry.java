@@ -35,10 +35,9 @@ public interface PeripheralRegistry {
 	void start(Pump<RegistrationEvent<?>> pump);
 
 	/**
-	 * If there is a security manager, its
-	 * {@link SecurityManager#checkPermission(java.security.Permission)} method
-	 * is called with {@link PeripheralManagerPermission#MODIFY} name and the
-	 * peripheral type.
+	 * If an {@link AuthorizationPolicy} or a security manager is installed,
+	 * {@link Authorization#check(java.security.Permission)} is called with
+	 * {@link PeripheralManagerPermission#MODIFY} name and the peripheral type.
 	 *
 	 * @param peripheralType
 	 *            the type of peripheral
@@ -46,10 +45,9 @@ public interface PeripheralRegistry {
 	<C extends Peripheral, P extends C> void checkModify(Class<C> peripheralType, P peripheral);
 
 	/**
-	 * If there is a security manager, its
-	 * {@link SecurityManager#checkPermission(java.security.Permission)} method
-	 * is called with the {@link PeripheralManagerPermission#READ} name and the
-	 * peripheral type.
+	 * If an {@link AuthorizationPolicy} or a security manager is installed,
+	 * {@link Authorization#check(java.security.Permission)} is called with
+	 * the {@link PeripheralManagerPermission#READ} name and the peripheral type.
 	 *
 	 * @param peripheralType
 	 *            the type of peripheral
@@ -102,7 +100,8 @@ public interface PeripheralRegistry {
 	 * @param peripheral
 	 *            the peripheral to be registered
 	 * @param createEvent
-	 *            if true, the method should return an event in case of success
+	 *            if true, the method should return an event in case of
+	 *            success, unless no listener would be notified of it
 	 * @param staticPeripheral
 	 *            <code>true</code> when the peripheral is available on startup
 	 * @return the created RegistrationEvent, if any, or null
@@ -123,13 +122,16 @@ public interface PeripheralRegistry {
 	 * @param peripheral
 	 *            the peripheral to be unregistered
 	 * @param createEvent
-	 *            if true, the method should return an event in case of success
+	 *            if true, the method should return an event in case of
+	 *            success, unless no listener would be notified of it
 	 * @return the created RegistrationEvent, if any, or null
 	 */
 	<P extends Peripheral> RegistrationEvent<P> unregister(Class<P> peripheralType, P peripheral, boolean createEvent);
 
 	/**
-	 * Executes the registration event.
+	 * Executes the registration event. An {@link ExtendedPeripheralRegistry}
+	 * does not notify the {@link SynchronousRegistrationListener} by this
+	 * method.
 	 *
 	 * @param pump
 	 *            the pump which execute the registration event
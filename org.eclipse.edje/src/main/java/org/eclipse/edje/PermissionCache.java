@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * The {@link PeripheralManagerPermission} checked on a registered peripheral.
+ * They are built once per registered class and action, and reused by the
+ * following checks as long as the peripheral is registered. They are built
+ * again after {@link #invalidate()}, when the properties of the
+ * {@link HardwareDescriptor} of the peripheral have changed.
+ * <p>
+ * The cached permissions are published as an immutable array: the checks read
+ * it without locking, only a missing permission is built under the lock.
+ */
+class PermissionCache {
+
+	private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+
+	/**
+	 * The cached permissions, replaced when a permission is added.
+	 */
+	private volatile Entry[] entries;
+
+	PermissionCache() {
+		this.entries = EMPTY_ENTRIES;
+	}
+
+	/**
+	 * Gets the permission to check for the given peripheral type and action.
+	 *
+	 * @param peripheralType
+	 *            the type on which the permission is checked
+	 * @param peripheral
+	 *            the peripheral this cache belongs to
+	 * @param action
+	 *            either {@link PeripheralManagerPermission#READ} or
+	 *            {@link PeripheralManagerPermission#MODIFY}
+	 * @return the permission
+	 */
+	<C extends Peripheral, P extends C> PeripheralManagerPermission get(Class<C> peripheralType, P peripheral,
+			String action) {
+		PeripheralManagerPermission permission = find(entries, peripheralType, action);
+		if (permission != null) {
+			return permission;
+		}
+		synchronized (this) {
+			// built meanwhile by another thread
+			Entry[] entries = this.entries;
+			permission = find(entries, peripheralType, action);
+			if (permission == null) {
+				// built under the lock: not lost by a concurrent invalidate()
+				permission = new PeripheralManagerPermission(peripheralType, peripheral, action);
+				int length = entries.length;
+				Entry[] newEntries = new Entry[length + 1];
+				System.arraycopy(entries, 0, newEntries, 0, length);
+				newEntries[length] = new Entry(peripheralType, permission);
+				this.entries = newEntries;
+			}
+			return permission;
+		}
+	}
+
+	/**
+	 * Drops the cached permissions, for instance when the properties of the
+	 * descriptor have changed.
+	 */
+	synchronized void invalidate() {
+		this.entries = EMPTY_ENTRIES;
+	}
+
+	private static PeripheralManagerPermission find(Entry[] entries, Class<?> peripheralType, String action) {
+		for (int i = entries.length; --i >= 0;) {
+			Entry entry = entries[i];
+			if (entry.peripheralType == peripheralType && action.equals(entry.permission.getActions())) {
+				return entry.permission;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A cached permission and the peripheral type it has been built for.
+	 */
+	private static final class Entry {
+
+		final Class<?> peripheralType;
+
+		final PeripheralManagerPermission permission;
+
+		Entry(Class<?> peripheralType, PeripheralManagerPermission permission) {
+			this.peripheralType = peripheralType;
+			this.permission = permission;
+		}
+	}
+}
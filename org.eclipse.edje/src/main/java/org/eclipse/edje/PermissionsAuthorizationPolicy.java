@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import java.security.Permission;
+import java.security.Permissions;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link AuthorizationPolicy} built from a fixed set of granted permissions.
+ * The grants are stored in the {@link Permission#newPermissionCollection()} of
+ * their type, and the recent decisions are cached: a repeated check costs a
+ * lookup. To change the grants, a new policy must be installed.
+ */
+public class PermissionsAuthorizationPolicy implements AuthorizationPolicy {
+
+	/**
+	 * Default maximum number of cached decisions.
+	 */
+	private static final int DEFAULT_DECISION_CACHE_SIZE = 64;
+
+	/**
+	 * The granted permissions.
+	 */
+	private final Permissions grants;
+
+	/**
+	 * The granted {@link PeripheralManagerPermission}, also indexed apart to
+	 * decide the accesses to a whole class of peripherals.
+	 */
+	private final PeripheralManagerPermissionCollection peripheralGrants;
+
+	/**
+	 * The decisions recently taken. Guarded by <code>this</code>.
+	 */
+	private final DecisionCache decisions;
+
+	/**
+	 * Creates a policy which grants the given permissions.
+	 *
+	 * @param grants
+	 *            the granted permissions
+	 */
+	public PermissionsAuthorizationPolicy(Permission[] grants) {
+		this(grants, DEFAULT_DECISION_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a policy which grants the given permissions.
+	 *
+	 * @param grants
+	 *            the granted permissions
+	 * @param decisionCacheSize
+	 *            the maximum number of cached decisions, the least recently
+	 *            used ones are evicted beyond
+	 */
+	public PermissionsAuthorizationPolicy(Permission[] grants, int decisionCacheSize) {
+		Permissions permissions = new Permissions();
+		PeripheralManagerPermissionCollection peripheralGrants = new PeripheralManagerPermissionCollection();
+		for (Permission grant : grants) {
+			permissions.add(grant);
+			if (grant instanceof PeripheralManagerPermission) {
+				peripheralGrants.add(grant);
+			}
+		}
+		permissions.setReadOnly();
+		peripheralGrants.setReadOnly();
+		this.grants = permissions;
+		this.peripheralGrants = peripheralGrants;
+		this.decisions = new DecisionCache(decisionCacheSize);
+	}
+
+	@Override
+	public boolean implies(Permission permission) {
+		DecisionCache decisions = this.decisions;
+		synchronized (this) {
+			Boolean decision = decisions.get(permission);
+			if (decision != null) {
+				return decision.booleanValue();
+			}
+		}
+		// decide outside the lock: the grants are read-only
+		boolean granted = grants.implies(permission);
+		synchronized (this) {
+			decisions.put(permission, Boolean.valueOf(granted));
+		}
+		return granted;
+	}
+
+	/**
+	 * Tells whether this policy may grant the given action on some peripheral
+	 * registered with the given class.
+	 *
+	 * @param className
+	 *            the name of the registration class
+	 * @param action
+	 *            the requested action
+	 * @return <code>false</code> if no peripheral of the class is granted the
+	 *         action
+	 */
+	boolean mayImplyClass(String className, String action) {
+		return peripheralGrants.mayImplyClass(className, action);
+	}
+
+	/**
+	 * The decisions in least recently used order, bounded in size.
+	 */
+	private static class DecisionCache extends LinkedHashMap<Permission, Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Maximum number of cached decisions.
+		 */
+		private final int maxSize;
+
+		DecisionCache(int maxSize) {
+			// access order: a hit makes the decision the most recently used
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Permission, Boolean> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
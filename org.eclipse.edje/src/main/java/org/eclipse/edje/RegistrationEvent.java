@@ -45,6 +45,29 @@ public class RegistrationEvent<P extends Peripheral> {
 	 */
 	PeripheralRegistry registry;
 
+	/**
+	 * The sequence number of this event in its registry.
+	 */
+	long sequence;
+
+	/**
+	 * The permissions checked on the peripheral, shared with its registration
+	 * in the registry. May be null.
+	 */
+	PermissionCache permissions;
+
+	/**
+	 * The {@link System#nanoTime()} when the event has been created by the
+	 * registry.
+	 */
+	long enqueueTime;
+
+	/**
+	 * The {@link System#nanoTime()} when the notification of the listeners has
+	 * started, set for each delivery of the event.
+	 */
+	long dispatchTime;
+
 	/**
 	 * Creates a new {@link RegistrationEvent} with the specified peripheral.
 	 *
@@ -66,6 +89,19 @@ public class RegistrationEvent<P extends Peripheral> {
 		this.add = add;
 	}
 
+	/**
+	 * Creates a copy of this event, for a delivery with its own dispatch time.
+	 *
+	 * @return the copy, with the dispatch time to set
+	 */
+	RegistrationEvent<P> copy() {
+		RegistrationEvent<P> copy = new RegistrationEvent<>(registry, peripheral, registeredClass, add);
+		copy.sequence = sequence;
+		copy.permissions = permissions;
+		copy.enqueueTime = enqueueTime;
+		return copy;
+	}
+
 	/**
 	 * Returns the registered or unregistered peripheral.
 	 *
@@ -84,6 +120,50 @@ public class RegistrationEvent<P extends Peripheral> {
 		return registeredClass;
 	}
 
+	/**
+	 * Returns the sequence number of this event. The events created by a
+	 * registry are numbered from 1 in the order of the registrations and
+	 * unregistrations. The events replayed from a snapshot have the sequence
+	 * number of the last event created before the snapshot.
+	 *
+	 * @return the sequence number
+	 */
+	public long getSequenceNumber() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the time at which the event has been created by the registering
+	 * thread, before the {@link SynchronousRegistrationListener} are
+	 * notified. The time is given by {@link System#nanoTime()}: it is only
+	 * meaningful to compute durations, or to order events of different
+	 * registries.
+	 *
+	 * @return the enqueue time in nanoseconds, or 0 if the event has not been
+	 *         queued (for instance, an event replayed from a snapshot)
+	 */
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+
+	/**
+	 * Returns the time at which the notification of the listeners has started
+	 * for this delivery of the event: the time the event pump has taken it from
+	 * the queue, or the time the registering thread has started to notify the
+	 * {@link SynchronousRegistrationListener}. It is updated when the same
+	 * event is delivered next, so it should be read during the callback; the
+	 * deliveries which may run meanwhile, such as a replay or the pump of the
+	 * slow listeners, notify a copy of the event instead. The difference
+	 * with {@link #getEnqueueTime()} is the latency of the delivery. The time
+	 * is given by {@link System#nanoTime()}.
+	 *
+	 * @return the dispatch time in nanoseconds, or 0 if the event has not been
+	 *         queued (for instance, an event replayed from a snapshot)
+	 */
+	public long getDispatchTime() {
+		return dispatchTime;
+	}
+
 	/**
 	 * Gets the type of the event: registration or unregistration.
 	 *
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * Selects the priority lane of the event pump in which a
+ * {@link RegistrationEvent} is queued, for instance depending on the type of
+ * the peripheral or on the kind of event. The events of a lane of higher
+ * priority are notified before the events pending in the lanes of lower
+ * priority.
+ * <p>
+ * The events of a same peripheral are always notified in order: an event is
+ * queued in the lane of an earlier event of the same peripheral still
+ * pending, instead of the selected one.
+ * <p>
+ * The implementation is set by the
+ * <code>org.eclipse.edje.eventpump.laneSelector</code> property, and must
+ * provide a public constructor without argument.
+ */
+public interface RegistrationLaneSelector {
+
+	/**
+	 * Selects the lane of the given event. This method is called on the
+	 * thread that registers or unregisters the peripheral and must not block.
+	 *
+	 * @param event
+	 *            the event to be queued
+	 * @param laneCount
+	 *            the number of lanes of the event pump
+	 * @return the lane, between 0 (highest priority) and
+	 *         <code>laneCount</code> (exclusive)
+	 */
+	int getLane(RegistrationEvent<?> event, int laneCount);
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * Selects the partition of the event pump which notifies the
+ * {@link RegistrationEvent} of a registered class. Each partition has its own
+ * queue and thread, so that the events of unrelated peripheral families do not
+ * delay each other. The events are notified in order within a partition.
+ * <p>
+ * The implementation is set by the
+ * <code>org.eclipse.edje.eventpump.partitioner</code> property, and must
+ * provide a public constructor without argument. There is a single partition
+ * when the registry is not an {@link ExtendedPeripheralRegistry}.
+ */
+public interface RegistrationPartitioner {
+
+	/**
+	 * Selects the partition of the events of the given registered class. The
+	 * same partition must be selected each time for a given class. This method
+	 * is called on the thread that registers or unregisters the peripheral and
+	 * must not block.
+	 *
+	 * @param registeredClass
+	 *            the class the peripheral is registered with
+	 * @param partitionCount
+	 *            the number of partitions of the event pump
+	 * @return the partition, between 0 and <code>partitionCount</code>
+	 *         (exclusive)
+	 */
+	int getPartition(Class<? extends Peripheral> registeredClass, int partitionCount);
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * A {@link RegistrationSubscriber} receives the registration events of a
+ * peripheral type at its own pace: it is notified of no more events than it
+ * has requested through its {@link RegistrationSubscription}. The events
+ * occurring meanwhile are buffered by the subscription.
+ *
+ * @param <P>
+ *            the type of the peripheral
+ *
+ * @see PeripheralManager#subscribe(Class, RegistrationSubscriber, int)
+ */
+public interface RegistrationSubscriber<P extends Peripheral> {
+
+	/**
+	 * This method is called once, before any other method, with the
+	 * subscription used to request events. No event is received until some are
+	 * requested with {@link RegistrationSubscription#request(long)}.
+	 *
+	 * @param subscription
+	 *            the subscription of this subscriber
+	 */
+	void onSubscribe(RegistrationSubscription<P> subscription);
+
+	/**
+	 * This method is called for each registration or unregistration event,
+	 * in order, as long as events have been requested.
+	 *
+	 * @param event
+	 *            the peripheral registration or unregistration event.
+	 */
+	void onNext(RegistrationEvent<P> event);
+
+	/**
+	 * This method is called when the subscription is terminated by an error,
+	 * for instance when the buffer of the pending events is full or when an
+	 * invalid number of events is requested. No other method is called
+	 * afterwards.
+	 *
+	 * @param error
+	 *            the error
+	 */
+	void onError(Throwable error);
+}
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+import org.eclipse.edje.util.QueueFullException;
+
+/**
+ * A {@link RegistrationSubscription} links a {@link RegistrationSubscriber} to
+ * the registration events of a peripheral type. The events are buffered until
+ * the subscriber requests them. Characteristics:
+ * <ul>
+ * <li>Fixed buffer size per subscriber</li>
+ * <li>The events are delivered in order, by the thread which notifies the
+ * event or by the thread which requests events</li>
+ * <li>When the buffer is full, the subscription is cancelled and the
+ * subscriber is notified with a {@link QueueFullException}: no event is lost
+ * silently</li>
+ * </ul>
+ *
+ * @param <P>
+ *            the type of the peripheral
+ *
+ * @see PeripheralManager#subscribe(Class, RegistrationSubscriber, int)
+ */
+public final class RegistrationSubscription<P extends Peripheral> {
+
+	/**
+	 * The subscriber.
+	 */
+	private final RegistrationSubscriber<P> subscriber;
+
+	/**
+	 * The listener which feeds the buffer.
+	 */
+	final RegistrationListener<P> listener;
+
+	/**
+	 * Events notified but not yet delivered.
+	 */
+	private final Object[] buffer;
+
+	/**
+	 * Index of the oldest pending event.
+	 */
+	private int ptrBegin;
+
+	/**
+	 * Number of pending events.
+	 */
+	private int count;
+
+	/**
+	 * Number of events requested but not yet delivered.
+	 */
+	private long demand;
+
+	/**
+	 * The error to notify, if any.
+	 */
+	private Throwable error;
+
+	/**
+	 * <code>true</code> once cancelled or terminated by an error.
+	 */
+	private boolean cancelled;
+
+	/**
+	 * <code>true</code> while a thread delivers the events.
+	 */
+	private boolean delivering;
+
+	/**
+	 * Creates a subscription.
+	 *
+	 * @param subscriber
+	 *            the subscriber
+	 * @param bufferSize
+	 *            the maximum number of pending events
+	 */
+	RegistrationSubscription(RegistrationSubscriber<P> subscriber, int bufferSize) {
+		if (subscriber == null) {
+			throw new NullPointerException();
+		}
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.subscriber = subscriber;
+		this.buffer = new Object[bufferSize];
+		this.listener = new RegistrationListener<P>() {
+
+			@Override
+			public void peripheralRegistered(RegistrationEvent<P> event) {
+				notifyEvent(event);
+			}
+
+			@Override
+			public void peripheralUnregistered(RegistrationEvent<P> event) {
+				notifyEvent(event);
+			}
+		};
+	}
+
+	/**
+	 * Requests the given number of events. They are delivered as soon as they
+	 * are available, possibly by the calling thread.
+	 *
+	 * @param n
+	 *            the number of events, strictly positive
+	 */
+	public void request(long n) {
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			if (n <= 0) {
+				terminate(new IllegalArgumentException("Non-positive request: " + n));
+			} else {
+				demand += n;
+				if (demand < 0) {
+					// overflow: unbounded
+					demand = Long.MAX_VALUE;
+				}
+			}
+		}
+		deliver();
+	}
+
+	/**
+	 * Cancels the subscription: the subscriber is not notified anymore and the
+	 * pending events are discarded.
+	 */
+	public void cancel() {
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			clear();
+		}
+		PeripheralManager.removeRegistrationListener(listener);
+	}
+
+	/**
+	 * Buffers an event, then delivers the pending events if requested.
+	 *
+	 * @param event
+	 *            the notified event
+	 */
+	void notifyEvent(RegistrationEvent<P> event) {
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			Object[] buffer = this.buffer;
+			if (count == buffer.length) {
+				terminate(new QueueFullException(event));
+			} else {
+				buffer[(ptrBegin + count) % buffer.length] = event;
+				++count;
+			}
+		}
+		deliver();
+	}
+
+	/**
+	 * Terminates the subscription with an error. The caller must hold the
+	 * lock.
+	 *
+	 * @param e
+	 *            the error to notify
+	 */
+	private void terminate(Throwable e) {
+		cancelled = true;
+		error = e;
+		clear();
+		// the listener is removed once the error is delivered
+	}
+
+	/**
+	 * Discards the pending events. The caller must hold the lock.
+	 */
+	private void clear() {
+		Object[] buffer = this.buffer;
+		for (int i = buffer.length; --i >= 0;) {
+			buffer[i] = null;
+		}
+		count = 0;
+	}
+
+	/**
+	 * Delivers the pending events as long as some are requested. Only one
+	 * thread delivers at a time, so that the events are delivered in order and
+	 * a request made during a delivery does not recurse.
+	 */
+	private void deliver() {
+		while (true) {
+			RegistrationEvent<P> event;
+			Throwable error;
+			synchronized (this) {
+				if (delivering) {
+					// the delivering thread will handle the new state
+					return;
+				}
+				error = this.error;
+				if (error != null) {
+					this.error = null;
+					event = null;
+				} else if (!cancelled && count != 0 && demand != 0) {
+					@SuppressWarnings("unchecked")
+					RegistrationEvent<P> next = (RegistrationEvent<P>) buffer[ptrBegin];
+					event = next;
+					buffer[ptrBegin] = null;
+					ptrBegin = (ptrBegin + 1) % buffer.length;
+					--count;
+					if (demand != Long.MAX_VALUE) {
+						--demand;
+					}
+				} else {
+					return;
+				}
+				delivering = true;
+			}
+			try {
+				if (error != null) {
+					PeripheralManager.removeRegistrationListener(listener);
+					subscriber.onError(error);
+					return;
+				}
+				subscriber.onNext(event);
+			} finally {
+				synchronized (this) {
+					delivering = false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje;
+
+/**
+ * A {@link SynchronousRegistrationListener} is a {@link RegistrationListener}
+ * which is notified on the thread that registers or unregisters the
+ * peripheral, before {@link PeripheralManager#register(Class, Peripheral)} or
+ * {@link PeripheralManager#unregister(Peripheral)} returns, instead of being
+ * notified by the event pump thread.
+ * <p>
+ * The same filtering applies: the listener is notified only if it is allowed
+ * to read the peripheral. The notification mechanism must be enabled.
+ * <p>
+ * Such listeners are intended for reactions that cannot afford the thread
+ * handoff of the event pump. Their callbacks must be short, since they delay
+ * the registering thread.
+ *
+ * @param <P>
+ *            the type of the peripheral
+ *
+ * @see PeripheralManager#addRegistrationListener(RegistrationListener, Class)
+ *      method
+ */
+public interface SynchronousRegistrationListener<P extends Peripheral> extends RegistrationListener<P> {
+
+}
@@ -22,6 +22,9 @@ import java.io.IOException;
  * [packageName].[protocol].ConnectionFactory
  * </pre>
  *
+ * A factory may also be registered for the protocols it declares, see
+ * {@link ProtocolConnectionFactory}.
+ *
  * @see Connector#open(String)
  */
 public interface ConnectionFactory {
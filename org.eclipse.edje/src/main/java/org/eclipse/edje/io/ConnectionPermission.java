@@ -13,10 +13,17 @@ package org.eclipse.edje.io;
 
 import java.io.Serializable;
 import java.security.Permission;
+import java.security.PermissionCollection;
 
 /**
  * This class represents rights access {@link Permission} to open a
  * {@link Connection}. The name is the URL of the connection to open.
+ * <p>
+ * When used as a grant, a name ending with <code>*</code> is a prefix
+ * wildcard: it implies all the URLs starting with the characters before the
+ * <code>*</code>. For instance, <code>comm:COM*</code> grants the access to
+ * all the <code>COM</code> ports, <code>comm:*</code> to the whole
+ * <code>comm</code> protocol and <code>*</code> to any connection.
  * 
  * @see Connector#open(String)
  */
@@ -27,6 +34,11 @@ public class ConnectionPermission extends Permission {
 	 */
 	private static final long serialVersionUID = -8885976374034978006L;
 
+	/**
+	 * Last character of a prefix wildcard name.
+	 */
+	static final char WILDCARD = '*';
+
 	/**
 	 * Constructs a permission with the specified name.
 	 * 
@@ -59,7 +71,28 @@ public class ConnectionPermission extends Permission {
 
 	@Override
 	public boolean implies(Permission permission) {
-		return equals(permission);
+		if (!(permission instanceof ConnectionPermission)) {
+			return false;
+		}
+		String name = getName();
+		String thatName = permission.getName();
+		int prefixLength = name.length() - 1;
+		if (prefixLength >= 0 && name.charAt(prefixLength) == WILDCARD) {
+			return thatName.regionMatches(0, name, 0, prefixLength);
+		}
+		return name.equals(thatName);
+	}
+
+	/**
+	 * Returns a new collection for storing {@link ConnectionPermission} grants,
+	 * indexed in a prefix tree: a permission is checked in a time proportional
+	 * to the length of its URL, whatever the number of grants.
+	 *
+	 * @return a new permission collection
+	 */
+	@Override
+	public PermissionCollection newPermissionCollection() {
+		return new ConnectionPermissionCollection();
 	}
 
 }
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.io;
+
+import java.security.Permission;
+import java.security.PermissionCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+
+/**
+ * A collection of {@link ConnectionPermission} grants, stored in a prefix
+ * tree of their names. A permission is implied if its URL reaches a node of a
+ * prefix wildcard grant, or ends on the node of an exact grant: the check
+ * walks the URL once, whatever the number of grants.
+ */
+@SuppressWarnings("serial")
+final class ConnectionPermissionCollection extends PermissionCollection {
+
+	/**
+	 * A node of the tree, reached by a prefix of the granted names.
+	 */
+	private static final class Node {
+
+		private static final char[] NO_KEYS = new char[0];
+
+		private static final Node[] NO_CHILDREN = new Node[0];
+
+		/**
+		 * The characters leading to the children, sorted.
+		 */
+		char[] keys;
+
+		/**
+		 * The children, in the order of their keys.
+		 */
+		Node[] children;
+
+		/**
+		 * <code>true</code> if the prefix of this node is granted.
+		 */
+		boolean exact;
+
+		/**
+		 * <code>true</code> if all the names starting with the prefix of this
+		 * node are granted.
+		 */
+		boolean wildcard;
+
+		Node() {
+			this.keys = NO_KEYS;
+			this.children = NO_CHILDREN;
+		}
+
+		Node get(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index >= 0 ? children[index] : null;
+		}
+
+		Node getOrAdd(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			if (index >= 0) {
+				return children[index];
+			}
+			index = -index - 1;
+			int length = keys.length;
+			char[] newKeys = new char[length + 1];
+			Node[] newChildren = new Node[length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, index);
+			System.arraycopy(children, 0, newChildren, 0, index);
+			System.arraycopy(keys, index, newKeys, index + 1, length - index);
+			System.arraycopy(children, index, newChildren, index + 1, length - index);
+			Node child = new Node();
+			newKeys[index] = c;
+			newChildren[index] = child;
+			keys = newKeys;
+			children = newChildren;
+			return child;
+		}
+	}
+
+	/**
+	 * The node of the empty prefix.
+	 */
+	private final Node root;
+
+	/**
+	 * All the grants, in the order they have been added.
+	 */
+	private final ArrayList<Permission> all;
+
+	ConnectionPermissionCollection() {
+		this.root = new Node();
+		this.all = new ArrayList<>();
+	}
+
+	@Override
+	public synchronized void add(Permission permission) {
+		if (!(permission instanceof ConnectionPermission)) {
+			throw new IllegalArgumentException(String.valueOf(permission));
+		}
+		if (isReadOnly()) {
+			throw new SecurityException();
+		}
+		String name = permission.getName();
+		int length = name.length();
+		boolean wildcard = length > 0 && name.charAt(length - 1) == ConnectionPermission.WILDCARD;
+		if (wildcard) {
+			--length;
+		}
+		Node node = root;
+		for (int i = 0; i < length; i++) {
+			node = node.getOrAdd(name.charAt(i));
+		}
+		if (wildcard) {
+			node.wildcard = true;
+		} else {
+			node.exact = true;
+		}
+		all.add(permission);
+	}
+
+	@Override
+	public synchronized boolean implies(Permission permission) {
+		if (!(permission instanceof ConnectionPermission)) {
+			return false;
+		}
+		String name = permission.getName();
+		int length = name.length();
+		Node node = root;
+		for (int i = 0; i < length; i++) {
+			if (node.wildcard) {
+				return true;
+			}
+			node = node.get(name.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return node.exact || node.wildcard;
+	}
+
+	@Override
+	public synchronized Enumeration<Permission> elements() {
+		return Collections.enumeration(new ArrayList<>(all));
+	}
+}
@@ -13,7 +13,9 @@
 package org.eclipse.edje.io;
 
 import java.io.IOException;
+import java.util.HashMap;
 
+import org.eclipse.edje.Authorization;
 import org.eclipse.edje.util.Util;
 
 /**
@@ -33,8 +35,22 @@ import org.eclipse.edje.util.Util;
  * <li><code>param</code> is a connection specific parameter
  * </ul>
  * <p>
- * The factory corresponding to the extracted protocol is dynamically bound and
- * its {@link ConnectionFactory#open} method is called on the specified URL.
+ * The protocols registered with a {@link ProtocolConnectionFactory} are opened
+ * by their factory, found in a table without reflection. For the other
+ * protocols, the factory corresponding to the extracted protocol is
+ * dynamically bound and its {@link ConnectionFactory#open} method is called on
+ * the specified URL.
+ * The factory class of a protocol is resolved once, and a
+ * {@link SharedConnectionFactory} is instantiated once: see
+ * {@link #invalidate()} to resolve them again.
+ * </p>
+ * <p>
+ * The factories listed by the
+ * <code>org.eclipse.edje.io.ProtocolConnectionFactory</code> property are
+ * registered when this class is initialized. A factory that cannot be
+ * instantiated is reported and skipped: its protocols are then opened by the
+ * factories of the default package, like the protocols which are not
+ * registered.
  * </p>
  *
  * @see ConnectionFactory
@@ -46,6 +62,83 @@ public class Connector extends Object {
 	 */
 	public static final String DEFAULT_PACKAGE = "org.eclipse.edje.connection";
 
+	/**
+	 * The factory of a protocol.
+	 */
+	private static final class ProtocolFactory {
+
+		/**
+		 * The factory class.
+		 */
+		final Class<ConnectionFactory> type;
+
+		/**
+		 * The single instance of a {@link SharedConnectionFactory}, null if
+		 * the factory is not shareable.
+		 */
+		final ConnectionFactory shared;
+
+		ProtocolFactory(Class<ConnectionFactory> type, ConnectionFactory shared) {
+			this.type = type;
+			this.shared = shared;
+		}
+	}
+
+	/**
+	 * Package of the factories of {@link #open(String)}, resolved on the first
+	 * connection.
+	 */
+	private static volatile String DefaultPackageName;
+
+	/**
+	 * Factories of the protocols already opened, by package name then by
+	 * protocol. The maps are immutable: they are replaced when a protocol is
+	 * resolved, so that the connections read them without locking.
+	 */
+	private static volatile HashMap<String, HashMap<String, ProtocolFactory>> Factories = new HashMap<>();
+
+	/**
+	 * The permission required to register a protocol.
+	 */
+	private static final String REGISTER_PROTOCOL = "registerConnectionProtocol";
+
+	/**
+	 * Factories of the registered protocols, by protocol. The map is
+	 * immutable: it is replaced when a protocol is registered or unregistered.
+	 */
+	private static volatile HashMap<String, ProtocolConnectionFactory> Protocols = new HashMap<>();
+
+	static {
+		String key = ProtocolConnectionFactory.class.getName();
+		String providers = System.getProperty(key);
+		// fall back to service name
+		if (providers == null) {
+			providers = Util.readConfigurableName(key);
+		}
+		if (providers != null) {
+			HashMap<String, ProtocolConnectionFactory> protocols = new HashMap<>();
+			int start = 0;
+			while (start < providers.length()) {
+				int end = providers.indexOf(',', start);
+				if (end == -1) {
+					end = providers.length();
+				}
+				String provider = providers.substring(start, end).trim();
+				if (!provider.isEmpty()) {
+					try {
+						put(protocols, (ProtocolConnectionFactory) Class.forName(provider).newInstance());
+					} catch (Throwable e) {
+						// skip this provider only: the other protocols can
+						// still be opened
+						e.printStackTrace();
+					}
+				}
+				start = end + 1;
+			}
+			Protocols = protocols;
+		}
+	}
+
 	/**
 	 * Forbidden constructor: connector cannot be instantiated.
 	 */
@@ -53,8 +146,9 @@ public class Connector extends Object {
 	}
 
 	/**
-	 * Creates and opens a {@link Connection} from an URL. The
-	 * {@link ConnectionFactory} implementation class must be available in the
+	 * Creates and opens a {@link Connection} from an URL. Unless the protocol
+	 * is registered (see {@link #registerProtocol(ProtocolConnectionFactory)}),
+	 * the {@link ConnectionFactory} implementation class must be available in the
 	 * default package {@link #DEFAULT_PACKAGE} and sub package <code>xxx</code>
 	 * where <code>xxx</code> is the connection protocol. The connection
 	 * protocol (<code>xxx</code>) must be the first argument of URL, followed
@@ -71,19 +165,23 @@ public class Connector extends Object {
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 * @throws SecurityException
-	 *             if a security manager exists and it does not allow the caller
-	 *             to open such kind of connection
+	 *             if the authorization policy or the security manager does not
+	 *             allow the caller to open such kind of connection
 	 * @return the opened {@link Connection}.
 	 */
 	public static Connection open(String url) throws IOException {
-		String key = DEFAULT_PACKAGE;
-		String packageName = System.getProperty(key);
-		// fall back to service name
-		if (packageName == null) {
-			packageName = Util.readConfigurableName(key);
-		}
+		String packageName = DefaultPackageName;
 		if (packageName == null) {
-			packageName = key;
+			String key = DEFAULT_PACKAGE;
+			packageName = System.getProperty(key);
+			// fall back to service name
+			if (packageName == null) {
+				packageName = Util.readConfigurableName(key);
+			}
+			if (packageName == null) {
+				packageName = key;
+			}
+			DefaultPackageName = packageName;
 		}
 
 		return open(packageName, url);
@@ -91,8 +189,10 @@ public class Connector extends Object {
 
 	/**
 	 * Create and open a Connection with the specified {@link ConnectionFactory}
-	 * package name. The {@link ConnectionFactory} implementation class must be
-	 * available in the given package and sub package <code>xxx</code> where
+	 * package name. Unless the protocol is registered (see
+	 * {@link #registerProtocol(ProtocolConnectionFactory)}), the
+	 * {@link ConnectionFactory} implementation class must be available in the
+	 * given package and sub package <code>xxx</code> where
 	 * <code>xxx</code> is the connection protocol. The connection protocol (
 	 * <code>xxx</code>) must be the first argument of URL, followed by ':'. The
 	 * class name must be <code>ConnectionFactory</code>:
@@ -111,8 +211,8 @@ public class Connector extends Object {
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 * @throws SecurityException
-	 *             if a security manager exists and it does not allow the caller
-	 *             to open such kind of connection
+	 *             if the authorization policy or the security manager does not
+	 *             allow the caller to open such kind of connection
 	 * @see ConnectionFactory
 	 * @return the open {@link Connection}.
 	 */
@@ -123,17 +223,15 @@ public class Connector extends Object {
 		} catch (IndexOutOfBoundsException e) {
 			throw new ConnectionNotFoundException(url, e);
 		}
-		SecurityManager sm = System.getSecurityManager();
-		if (sm != null) {
-			sm.checkPermission(new ConnectionPermission(url));
+		if (Authorization.isEnabled()) {
+			Authorization.check(new ConnectionPermission(url));
 		}
 
-		Class<ConnectionFactory> connectionClass;
-		connectionClass = getConnectionFactoryClass(packageName, url, protocol);
-
-		ConnectionFactory connectionFactory;
+		ConnectionFactory connectionFactory = Protocols.get(protocol);
 		try {
-			connectionFactory = connectionClass.newInstance();
+			if (connectionFactory == null) {
+				connectionFactory = getConnectionFactory(packageName, url, protocol);
+			}
 			return connectionFactory.open(url);
 		} catch (InstantiationException e) {
 			throw new IOException(e);
@@ -144,6 +242,123 @@ public class Connector extends Object {
 		}
 	}
 
+	/**
+	 * Registers the given factory for the protocols it declares. A registered
+	 * protocol is opened by this factory, whatever the package given to
+	 * {@link #open(String, String)}. If a protocol is already registered, its
+	 * factory is replaced. The current authorization policy (or the security
+	 * manager) must grant the
+	 * <code>RuntimePermission("registerConnectionProtocol")</code>.
+	 *
+	 * @param factory
+	 *            the factory to register
+	 * @throws SecurityException
+	 *             if the caller is not allowed to register a protocol
+	 */
+	public static void registerProtocol(ProtocolConnectionFactory factory) {
+		if (Authorization.isEnabled()) {
+			Authorization.check(new RuntimePermission(REGISTER_PROTOCOL));
+		}
+		synchronized (Connector.class) {
+			HashMap<String, ProtocolConnectionFactory> protocols = new HashMap<>(Protocols);
+			put(protocols, factory);
+			Protocols = protocols;
+		}
+	}
+
+	/**
+	 * Unregisters the given factory from the protocols it declares, if it is
+	 * still registered for them. The current authorization policy (or the
+	 * security manager) must grant the
+	 * <code>RuntimePermission("registerConnectionProtocol")</code>.
+	 *
+	 * @param factory
+	 *            the factory to unregister
+	 * @throws SecurityException
+	 *             if the caller is not allowed to unregister a protocol
+	 */
+	public static void unregisterProtocol(ProtocolConnectionFactory factory) {
+		if (Authorization.isEnabled()) {
+			Authorization.check(new RuntimePermission(REGISTER_PROTOCOL));
+		}
+		synchronized (Connector.class) {
+			HashMap<String, ProtocolConnectionFactory> protocols = new HashMap<>(Protocols);
+			for (String protocol : factory.getProtocols()) {
+				if (protocols.get(protocol) == factory) {
+					protocols.remove(protocol);
+				}
+			}
+			Protocols = protocols;
+		}
+	}
+
+	/**
+	 * Adds the given factory to a table of the registered protocols, for all
+	 * the protocols it declares.
+	 *
+	 * @param protocols
+	 *            the table of the registered protocols, by protocol
+	 * @param factory
+	 *            the factory to add
+	 */
+	private static void put(HashMap<String, ProtocolConnectionFactory> protocols,
+			ProtocolConnectionFactory factory) {
+		for (String protocol : factory.getProtocols()) {
+			protocols.put(protocol, factory);
+		}
+	}
+
+	/**
+	 * Forgets the resolved {@link ConnectionFactory} classes, the shared
+	 * factories and the default package: they are resolved again by the next
+	 * connections. To be called when the factories or the configuration have
+	 * changed. The current authorization policy (or the security manager) must
+	 * grant the <code>RuntimePermission("registerConnectionProtocol")</code>.
+	 *
+	 * @throws SecurityException
+	 *             if the caller is not allowed to change the factories
+	 */
+	public static void invalidate() {
+		if (Authorization.isEnabled()) {
+			Authorization.check(new RuntimePermission(REGISTER_PROTOCOL));
+		}
+		synchronized (Connector.class) {
+			Factories = new HashMap<>();
+			DefaultPackageName = null;
+		}
+	}
+
+	/**
+	 * Gets a factory for the given protocol: the shared factory, or a new
+	 * instance of the factory class. The class is resolved on the first
+	 * connection of the protocol only.
+	 */
+	private static ConnectionFactory getConnectionFactory(String packageName, String url, String protocol)
+			throws ConnectionNotFoundException, InstantiationException, IllegalAccessException {
+		HashMap<String, ProtocolFactory> protocols = Factories.get(packageName);
+		ProtocolFactory factory = protocols != null ? protocols.get(protocol) : null;
+		if (factory == null) {
+			Class<ConnectionFactory> connectionClass = getConnectionFactoryClass(packageName, url, protocol);
+			synchronized (Connector.class) {
+				HashMap<String, HashMap<String, ProtocolFactory>> factories = Factories;
+				protocols = factories.get(packageName);
+				factory = protocols != null ? protocols.get(protocol) : null;
+				if (factory == null) {
+					ConnectionFactory shared = SharedConnectionFactory.class.isAssignableFrom(connectionClass)
+							? connectionClass.newInstance() : null;
+					factory = new ProtocolFactory(connectionClass, shared);
+					protocols = protocols != null ? new HashMap<>(protocols) : new HashMap<String, ProtocolFactory>();
+					protocols.put(protocol, factory);
+					factories = new HashMap<>(factories);
+					factories.put(packageName, protocols);
+					Factories = factories;
+				}
+			}
+		}
+		ConnectionFactory shared = factory.shared;
+		return shared != null ? shared : factory.type.newInstance();
+	}
+
 	@SuppressWarnings("unchecked")
 	private static Class<ConnectionFactory> getConnectionFactoryClass(String packageName, String url, String protocol)
 			throws ConnectionNotFoundException {
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.io;
+
+/**
+ * A {@link SharedConnectionFactory} which declares the protocols it opens. It
+ * is registered in the {@link Connector}, either by
+ * {@link Connector#registerProtocol(ProtocolConnectionFactory)} or by the
+ * configuration: the <code>org.eclipse.edje.io.ProtocolConnectionFactory</code>
+ * system property, or else the configuration resource of the same name, lists
+ * the comma-separated names of the factory classes instantiated when the
+ * {@link Connector} is initialized.
+ */
+public interface ProtocolConnectionFactory extends SharedConnectionFactory {
+
+	/**
+	 * Gets the protocols opened by this factory.
+	 *
+	 * @return the protocols, such as <code>comm</code>, without the trailing
+	 *         ':'
+	 */
+	String[] getProtocols();
+}
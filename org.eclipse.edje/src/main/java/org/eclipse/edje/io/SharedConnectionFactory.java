@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.io;
+
+/**
+ * A {@link ConnectionFactory} which can be shared: its
+ * {@link ConnectionFactory#open(String)} method may be called concurrently by
+ * several threads. The {@link Connector} creates a single instance of such a
+ * factory and reuses it for all the connections of its protocol, instead of
+ * creating a new factory for each connection.
+ */
+public interface SharedConnectionFactory extends ConnectionFactory {
+}
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+
+package org.eclipse.edje.util;
+
+/**
+ * Queue with FIFO management and elastic capacity. Characteristics:
+ * <ul>
+ * <li>The capacity grows by segments when the queue is full, up to a maximum
+ * capacity</li>
+ * <li>The capacity shrinks by a segment, down to the initial capacity, each
+ * time the consumer parks on an empty queue</li>
+ * <li>The high-water mark of the pending data is recorded (see
+ * {@link #getHighWaterMark()})</li>
+ * <li>Simple synchronization on the queue</li>
+ * <li>A {@link QueueFullException} is thrown if the queue is full at its
+ * maximum capacity</li>
+ * <li>Pending data may be coalesced by subclasses (see
+ * {@link #coalesce(Object)})</li>
+ * </ul>
+ *
+ * @param <T>
+ *            data type
+ */
+public class ElasticFIFOQueue<T> extends Queue<T> {
+
+	/**
+	 * The capacity the queue starts with and shrinks back to.
+	 */
+	private final int initialCapacity;
+
+	/**
+	 * The capacity added or removed at once.
+	 */
+	private final int segmentSize;
+
+	/**
+	 * The capacity the queue cannot grow beyond.
+	 */
+	private final int maxCapacity;
+
+	/**
+	 * List of data, reallocated when the capacity changes.
+	 */
+	private Object[] buffer;
+
+	/**
+	 * Pointer on next data to read.
+	 */
+	private int ptrBegin;
+
+	/**
+	 * Number of pending data.
+	 */
+	private int count;
+
+	/**
+	 * Maximum number of pending data reached.
+	 */
+	private int highWaterMark;
+
+	/**
+	 * The monitor of the consumers and of the threads waiting in
+	 * {@link #waitIdle(long)}, on the queue lock.
+	 */
+	private final QueueMonitor monitor;
+
+	/**
+	 * Creates a queue with FIFO management and elastic capacity.
+	 *
+	 * @param initialCapacity
+	 *            the capacity the queue starts with and shrinks back to
+	 * @param segmentSize
+	 *            the capacity added or removed at once
+	 * @param maxCapacity
+	 *            the capacity the queue cannot grow beyond
+	 * @throws IllegalArgumentException
+	 *             if the capacities are not consistent
+	 */
+	public ElasticFIFOQueue(int initialCapacity, int segmentSize, int maxCapacity) {
+		super();
+		if (initialCapacity <= 0 || segmentSize <= 0 || maxCapacity < initialCapacity) {
+			throw new IllegalArgumentException();
+		}
+		this.initialCapacity = initialCapacity;
+		this.segmentSize = segmentSize;
+		this.maxCapacity = maxCapacity;
+		this.buffer = new Object[initialCapacity];
+		this.monitor = new QueueMonitor(this);
+	}
+
+	/**
+	 * Gets the current capacity of the queue.
+	 *
+	 * @return the number of data the queue can hold before growing
+	 */
+	public synchronized int getCapacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * Gets the maximum number of pending data reached since the queue creation
+	 * or the last call to {@link #resetHighWaterMark()}.
+	 *
+	 * @return the high-water mark
+	 */
+	public synchronized int getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	/**
+	 * Resets the high-water mark to the current number of pending data.
+	 */
+	public synchronized void resetHighWaterMark() {
+		highWaterMark = count;
+	}
+
+	/**
+	 * Returns the oldest data or waits for it. This method blocks until data is
+	 * available or the calling thread is interrupted.
+	 *
+	 * @return the oldest data added to the FIFO, or <code>null</code> if the
+	 *         calling thread has been interrupted while waiting
+	 */
+	@Override
+	public synchronized T poll() {
+		return awaitData(0) ? take() : null;
+	}
+
+	@Override
+	public synchronized T tryPoll() {
+		return count != 0 ? take() : null;
+	}
+
+	@Override
+	public synchronized T poll(long timeout) {
+		if (timeout <= 0) {
+			return tryPoll();
+		}
+		return awaitData(timeout) ? take() : null;
+	}
+
+	@Override
+	public synchronized int drainTo(Object[] array, int max) {
+		int drained = 0;
+		while (drained < max && count != 0) {
+			array[drained++] = take();
+		}
+		return drained;
+	}
+
+	/**
+	 * This method adds the <code>data</code> to the FIFO. When the FIFO is
+	 * full, its capacity grows by a segment; when it is full at its maximum
+	 * capacity, {@link QueueFullException} is thrown.
+	 *
+	 * @param data
+	 *            the new data to be added to the FIFO
+	 */
+	@Override
+	public synchronized void add(T data) {
+		if (coalesce(data)) {
+			// data cancelled a pending data, nothing to add: the queue may
+			// have become idle
+			monitor.dataRemoved();
+			return;
+		}
+		int count = this.count;
+		int capacity = buffer.length;
+		if (count == capacity) {
+			if (capacity >= maxCapacity) {
+				// fifo is full
+				throw new QueueFullException(data);
+			}
+			resize(Math.min(capacity + segmentSize, maxCapacity));
+		}
+		Object[] buffer = this.buffer;
+		buffer[(ptrBegin + count) % buffer.length] = data;
+		this.count = ++count;
+		if (count > highWaterMark) {
+			highWaterMark = count;
+		}
+		// notify eventually the waiting consumer (the threads waiting for the
+		// queue to be idle are waiting on the same monitor)
+		monitor.dataAdded();
+	}
+
+	@Override
+	public synchronized boolean waitIdle(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (count != 0 || !monitor.hasParkedConsumer()) {
+			if (!monitor.awaitIdle(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Called by {@link #add(Object)} with the queue lock held, before the
+	 * <code>data</code> is added. Subclasses may override this method to
+	 * collapse the <code>data</code> with a pending one (see
+	 * {@link #removePending(int)}).<br/>
+	 * The default behaviour is to never coalesce.
+	 *
+	 * @param data
+	 *            the data to be added to the FIFO
+	 * @return <code>true</code> if the <code>data</code> must not be added to
+	 *         the FIFO, <code>false</code> otherwise
+	 */
+	protected boolean coalesce(T data) {
+		return false;
+	}
+
+	/**
+	 * Gets the number of pending data. The caller must hold the queue lock.
+	 *
+	 * @return the number of pending data
+	 */
+	protected int getPendingCount() {
+		return count;
+	}
+
+	/**
+	 * Gets a pending data. The caller must hold the queue lock.
+	 *
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 * @return the pending data
+	 */
+	protected T getPending(int index) {
+		Object[] buffer = this.buffer;
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[(ptrBegin + index) % buffer.length];
+		return data;
+	}
+
+	/**
+	 * Removes a pending data. The following data are shifted to keep the FIFO
+	 * order. The caller must hold the queue lock.
+	 *
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 */
+	protected void removePending(int index) {
+		Object[] buffer = this.buffer;
+		int capacity = buffer.length;
+		int ptrBegin = this.ptrBegin;
+		int count = --this.count;
+		for (; index < count; index++) {
+			buffer[(ptrBegin + index) % capacity] = buffer[(ptrBegin + index + 1) % capacity];
+		}
+		buffer[(ptrBegin + count) % capacity] = null;
+	}
+
+	/**
+	 * Waits until the FIFO is not empty. The capacity shrinks when the FIFO is
+	 * empty. The caller must hold the queue lock.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, 0 to wait forever
+	 * @return <code>true</code> if data is available, <code>false</code> if
+	 *         the timeout has elapsed or the calling thread has been
+	 *         interrupted while waiting
+	 */
+	private boolean awaitData(long timeout) {
+		long deadline = QueueMonitor.dataDeadline(timeout);
+		while (count == 0) {
+			int capacity = buffer.length;
+			if (capacity > initialCapacity) {
+				// idle: give back a segment
+				resize(Math.max(capacity - segmentSize, initialCapacity));
+			}
+			if (!monitor.awaitData(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the oldest data. The FIFO must not be empty and the caller must
+	 * hold the queue lock.
+	 *
+	 * @return the oldest data
+	 */
+	private T take() {
+		Object[] buffer = this.buffer;
+		int ptrBegin = this.ptrBegin;
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[ptrBegin];
+		buffer[ptrBegin] = null;
+		this.ptrBegin = (ptrBegin + 1) % buffer.length;
+		--count;
+		return data;
+	}
+
+	/**
+	 * Reallocates the buffer with the pending data in order. The caller must
+	 * hold the queue lock.
+	 *
+	 * @param capacity
+	 *            the new capacity, not less than the number of pending data
+	 */
+	private void resize(int capacity) {
+		Object[] buffer = this.buffer;
+		Object[] newBuffer = new Object[capacity];
+		int oldCapacity = buffer.length;
+		int ptrBegin = this.ptrBegin;
+		int count = this.count;
+		for (int i = 0; i < count; i++) {
+			newBuffer[i] = buffer[(ptrBegin + i) % oldCapacity];
+		}
+		this.buffer = newBuffer;
+		this.ptrBegin = 0;
+	}
+}
@@ -0,0 +1,458 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+
+package org.eclipse.edje.util;
+
+import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.ArrayList;
+
+/**
+ * An event loop: a {@link Pump} of {@link Runnable} shared by several event
+ * sources, so that they do not need a thread each. Characteristics:
+ * <ul>
+ * <li>The tasks are posted in several queues (see {@link #post(int, Runnable)});
+ * the queue 0 has the highest priority</li>
+ * <li>Tasks may be scheduled once or periodically (see
+ * {@link #schedule(Runnable, long, long)}); a due task is executed before the
+ * queued tasks</li>
+ * <li>A source may signal its readiness from any thread (see
+ * {@link #newReadiness(int, Runnable)}); its callback is executed once for all
+ * the signals received before it runs</li>
+ * <li>The loop is started, stopped and drained as a {@link Pump}</li>
+ * </ul>
+ * All the tasks are executed by the loop thread and must not block it.
+ */
+public class EventLoop extends Pump<Runnable> {
+
+	/**
+	 * The queue of the loop, holding the posted and the scheduled tasks.
+	 */
+	private final LoopQueue loopQueue;
+
+	/**
+	 * Creates an event loop.
+	 *
+	 * @param queueCount
+	 *            the number of queues
+	 * @param queueSize
+	 *            the size of each queue
+	 * @param threadPriority
+	 *            the requested priority of the thread used to run the loop
+	 * @param ueh
+	 *            the uncaught exception handler, called when a task fails
+	 */
+	public EventLoop(int queueCount, int queueSize, int threadPriority, UncaughtExceptionHandler ueh) {
+		this(new LoopQueue(queueCount, queueSize), threadPriority, ueh);
+	}
+
+	private EventLoop(LoopQueue loopQueue, int threadPriority, UncaughtExceptionHandler ueh) {
+		super(loopQueue, threadPriority, ueh);
+		this.loopQueue = loopQueue;
+	}
+
+	/**
+	 * Gets the number of queues of this loop.
+	 *
+	 * @return the number of queues
+	 */
+	public int getQueueCount() {
+		return loopQueue.tasks.getLaneCount();
+	}
+
+	/**
+	 * Posts a task in the queue of lowest priority.
+	 *
+	 * @param task
+	 *            the task to execute
+	 * @throws QueueFullException
+	 *             if the queue is full
+	 */
+	public void post(Runnable task) {
+		loopQueue.add(task);
+	}
+
+	/**
+	 * Posts a task in the given queue.
+	 *
+	 * @param queue
+	 *            the queue, between 0 (highest priority) and
+	 *            {@link #getQueueCount()} (exclusive)
+	 * @param task
+	 *            the task to execute
+	 * @throws QueueFullException
+	 *             if the queue is full
+	 * @throws IndexOutOfBoundsException
+	 *             if the queue does not exist
+	 */
+	public void post(int queue, Runnable task) {
+		loopQueue.add(task, queue);
+	}
+
+	/**
+	 * Schedules a task to be executed once after the given delay.
+	 *
+	 * @param task
+	 *            the task to execute
+	 * @param delay
+	 *            the delay in milliseconds
+	 * @return the scheduled task, which can be cancelled
+	 * @throws IllegalArgumentException
+	 *             if the delay is negative
+	 */
+	public ScheduledTask schedule(Runnable task, long delay) {
+		return schedule(task, delay, 0);
+	}
+
+	/**
+	 * Schedules a task to be executed after the given delay, then periodically
+	 * at a fixed rate. The periods missed because the loop was busy are
+	 * skipped.
+	 *
+	 * @param task
+	 *            the task to execute
+	 * @param delay
+	 *            the delay of the first execution in milliseconds
+	 * @param period
+	 *            the period in milliseconds, or 0 to execute the task once
+	 * @return the scheduled task, which can be cancelled
+	 * @throws IllegalArgumentException
+	 *             if the delay or the period is negative
+	 */
+	public ScheduledTask schedule(Runnable task, long delay, long period) {
+		if (delay < 0 || period < 0) {
+			throw new IllegalArgumentException();
+		}
+		ScheduledTask scheduledTask = new ScheduledTask(loopQueue, task, period);
+		loopQueue.schedule(scheduledTask, System.currentTimeMillis() + delay);
+		return scheduledTask;
+	}
+
+	/**
+	 * Creates a readiness signal of an event source, typically an I/O device
+	 * or an interrupt handler. The callback is posted in the given queue when
+	 * the readiness is signaled.
+	 *
+	 * @param queue
+	 *            the queue, between 0 (highest priority) and
+	 *            {@link #getQueueCount()} (exclusive)
+	 * @param callback
+	 *            the callback executed by the loop when the source is ready
+	 * @return the readiness signal
+	 * @throws IndexOutOfBoundsException
+	 *             if the queue does not exist
+	 */
+	public Readiness newReadiness(int queue, Runnable callback) {
+		if (queue < 0 || queue >= getQueueCount()) {
+			throw new IndexOutOfBoundsException(Integer.toString(queue));
+		}
+		return new Readiness(this, queue, callback);
+	}
+
+	@Override
+	public void execute(Runnable data) {
+		data.run();
+	}
+
+	/**
+	 * A task scheduled in an {@link EventLoop}.
+	 */
+	public static final class ScheduledTask {
+
+		private final LoopQueue loopQueue;
+
+		private final Runnable task;
+
+		private final long period;
+
+		/**
+		 * The next execution time. Guarded by the loop queue.
+		 */
+		private long deadline;
+
+		/**
+		 * Whether the task is in the timers of the loop queue. Guarded by the
+		 * loop queue.
+		 */
+		private boolean scheduled;
+
+		private ScheduledTask(LoopQueue loopQueue, Runnable task, long period) {
+			this.loopQueue = loopQueue;
+			this.task = task;
+			this.period = period;
+		}
+
+		/**
+		 * Cancels the next executions of this task. An execution in progress
+		 * is not interrupted.
+		 *
+		 * @return <code>true</code> if an execution has been cancelled,
+		 *         <code>false</code> if the task was not scheduled anymore
+		 */
+		public boolean cancel() {
+			return loopQueue.cancel(this);
+		}
+
+		/**
+		 * Tells whether this task is waiting for a next execution.
+		 *
+		 * @return <code>true</code> if the task is scheduled
+		 */
+		public boolean isScheduled() {
+			synchronized (loopQueue) {
+				return scheduled;
+			}
+		}
+	}
+
+	/**
+	 * The readiness signal of an event source of an {@link EventLoop}.
+	 */
+	public static final class Readiness {
+
+		private final EventLoop loop;
+
+		private final int queue;
+
+		/**
+		 * The task posted on signal, which executes the callback.
+		 */
+		private final Runnable dispatcher;
+
+		/**
+		 * Whether the dispatcher is pending. Guarded by <code>this</code>.
+		 */
+		private boolean signaled;
+
+		private Readiness(EventLoop loop, int queue, final Runnable callback) {
+			this.loop = loop;
+			this.queue = queue;
+			this.dispatcher = new Runnable() {
+				@Override
+				public void run() {
+					synchronized (Readiness.this) {
+						// the signals received from now on need a new run
+						signaled = false;
+					}
+					callback.run();
+				}
+			};
+		}
+
+		/**
+		 * Signals that the source is ready. This method does not block and may
+		 * be called from any thread. The callback is posted unless it is
+		 * already pending.
+		 *
+		 * @throws QueueFullException
+		 *             if the callback cannot be posted
+		 */
+		public void signal() {
+			synchronized (this) {
+				if (signaled) {
+					return;
+				}
+				signaled = true;
+			}
+			try {
+				loop.post(queue, dispatcher);
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					signaled = false;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Queue of the loop: the posted tasks and the timers, under a single
+	 * monitor.
+	 */
+	private static class LoopQueue extends Queue<Runnable> {
+
+		/**
+		 * The posted tasks, accessed with the loop queue lock held.
+		 */
+		final MultiLaneFIFOQueue<Runnable> tasks;
+
+		/**
+		 * The scheduled tasks, sorted by deadline.
+		 */
+		private final ArrayList<ScheduledTask> timers;
+
+		/**
+		 * Number of posted tasks not polled yet.
+		 */
+		private int pendingTasks;
+
+		/**
+		 * The monitor of the consumers and of the threads waiting in
+		 * {@link #waitIdle(long)}, on the loop queue lock.
+		 */
+		private final QueueMonitor monitor;
+
+		LoopQueue(int queueCount, int queueSize) {
+			this.tasks = new MultiLaneFIFOQueue<>(queueCount, queueSize);
+			this.timers = new ArrayList<>();
+			this.monitor = new QueueMonitor(this);
+		}
+
+		@Override
+		public synchronized void add(Runnable data) {
+			tasks.add(data);
+			++pendingTasks;
+			monitor.dataAdded();
+		}
+
+		synchronized void add(Runnable data, int queue) {
+			tasks.add(data, queue);
+			++pendingTasks;
+			monitor.dataAdded();
+		}
+
+		synchronized void schedule(ScheduledTask scheduledTask, long deadline) {
+			scheduledTask.deadline = deadline;
+			insertTimer(scheduledTask);
+			// the consumer may wait for a later deadline
+			monitor.dataAdded();
+		}
+
+		synchronized boolean cancel(ScheduledTask scheduledTask) {
+			if (!scheduledTask.scheduled) {
+				return false;
+			}
+			timers.remove(scheduledTask);
+			scheduledTask.scheduled = false;
+			return true;
+		}
+
+		@Override
+		public synchronized Runnable poll() {
+			return awaitTask(0);
+		}
+
+		@Override
+		public synchronized Runnable tryPoll() {
+			return nextTask(System.currentTimeMillis());
+		}
+
+		@Override
+		public synchronized Runnable poll(long timeout) {
+			if (timeout <= 0) {
+				return tryPoll();
+			}
+			return awaitTask(timeout);
+		}
+
+		@Override
+		public synchronized int drainTo(Object[] array, int max) {
+			long now = System.currentTimeMillis();
+			int count = 0;
+			Runnable task;
+			while (count < max && (task = nextTask(now)) != null) {
+				array[count++] = task;
+			}
+			return count;
+		}
+
+		@Override
+		public synchronized boolean waitIdle(long timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
+			while (pendingTasks != 0 || !monitor.hasParkedConsumer() || hasDueTimer(System.currentTimeMillis())) {
+				if (!monitor.awaitIdle(deadline)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Waits for a due timer or a posted task. The caller must hold the
+		 * queue lock.
+		 *
+		 * @param timeout
+		 *            the maximum time to wait in milliseconds, 0 to wait
+		 *            forever
+		 * @return the task, or <code>null</code> if the timeout has elapsed or
+		 *         the calling thread has been interrupted while waiting
+		 */
+		private Runnable awaitTask(long timeout) {
+			long deadline = QueueMonitor.dataDeadline(timeout);
+			Runnable task;
+			while ((task = nextTask(System.currentTimeMillis())) == null) {
+				// the first timer is not due, otherwise nextTask() would have
+				// returned it
+				long wakeUp = timers.isEmpty() ? 0 : timers.get(0).deadline;
+				if (!monitor.awaitData(deadline, wakeUp)) {
+					return null;
+				}
+			}
+			return task;
+		}
+
+		/**
+		 * Removes the next task to execute: the earliest due timer, or the
+		 * oldest posted task of highest priority. The caller must hold the
+		 * queue lock.
+		 *
+		 * @param now
+		 *            the current time
+		 * @return the task, or <code>null</code> if there is none
+		 */
+		private Runnable nextTask(long now) {
+			if (hasDueTimer(now)) {
+				ScheduledTask scheduledTask = timers.remove(0);
+				long period = scheduledTask.period;
+				if (period != 0) {
+					long deadline = scheduledTask.deadline + period;
+					if (deadline <= now) {
+						// skip the missed periods
+						deadline += ((now - deadline) / period + 1) * period;
+					}
+					scheduledTask.deadline = deadline;
+					insertTimer(scheduledTask);
+				} else {
+					scheduledTask.scheduled = false;
+				}
+				return scheduledTask.task;
+			}
+			Runnable task = tasks.tryPoll();
+			if (task != null) {
+				--pendingTasks;
+			}
+			return task;
+		}
+
+		private boolean hasDueTimer(long now) {
+			ArrayList<ScheduledTask> timers = this.timers;
+			return !timers.isEmpty() && timers.get(0).deadline <= now;
+		}
+
+		/**
+		 * Inserts a task in the timers, after the tasks with the same
+		 * deadline. The caller must hold the queue lock.
+		 *
+		 * @param scheduledTask
+		 *            the task to insert
+		 */
+		private void insertTimer(ScheduledTask scheduledTask) {
+			ArrayList<ScheduledTask> timers = this.timers;
+			long deadline = scheduledTask.deadline;
+			int index = timers.size();
+			while (index > 0 && timers.get(index - 1).deadline > deadline) {
+				--index;
+			}
+			timers.add(index, scheduledTask);
+			scheduledTask.scheduled = true;
+		}
+	}
+}
@@ -17,6 +17,8 @@ package org.eclipse.edje.util;
  * <li>Fixed buffer size</li>
  * <li>Simple synchronization on buffer array</li>
  * <li>A {@link QueueFullException} is thrown if the queue is full</li>
+ * <li>Pending data may be coalesced by subclasses (see
+ * {@link #coalesce(Object)})</li>
  * </ul>
  *
  * @param <T>
@@ -39,6 +41,12 @@ public class FixedLengthFIFOQueue<T> extends Queue<T> {
 	 */
 	public int ptrEnd;
 
+	/**
+	 * The monitor of the consumers and of the threads waiting in
+	 * {@link #waitIdle(long)}, on the {@link #buffer} lock.
+	 */
+	private final QueueMonitor monitor;
+
 	/**
 	 * Creates a queue with FIFO management.
 	 *
@@ -49,33 +57,86 @@ public class FixedLengthFIFOQueue<T> extends Queue<T> {
 		super();
 		this.buffer = new Object[bufferSize + 1]; // +1: one index in the queue
 													// is always empty
+		this.monitor = new QueueMonitor(buffer);
 	}
 
 	/**
 	 * Returns the oldest data or waits for it. This method blocks until data is
-	 * available.
+	 * available or the calling thread is interrupted.
 	 *
-	 * @return the oldest data added to the FIFO
+	 * @return the oldest data added to the FIFO, or <code>null</code> if the
+	 *         calling thread has been interrupted while waiting
 	 */
 	@Override
 	public T poll() {
 		// NOTE: read do not need writeMonitor
 		synchronized (buffer) {
-			while (ptrBegin == ptrEnd) {
-				try {
-					buffer.wait();
-				} catch (InterruptedException e) {
-					throw new AssertionError(e);
-				}
+			return awaitData(0) ? take() : null;
+		}
+	}
+
+	@Override
+	public T tryPoll() {
+		synchronized (buffer) {
+			return ptrBegin != ptrEnd ? take() : null;
+		}
+	}
+
+	@Override
+	public T poll(long timeout) {
+		if (timeout <= 0) {
+			return tryPoll();
+		}
+		synchronized (buffer) {
+			return awaitData(timeout) ? take() : null;
+		}
+	}
+
+	@Override
+	public int drainTo(Object[] array, int max) {
+		synchronized (buffer) {
+			int count = 0;
+			while (count < max && ptrBegin != ptrEnd) {
+				array[count++] = take();
 			}
-			@SuppressWarnings("unchecked")
-			T data = (T) buffer[ptrBegin];
-			buffer[ptrBegin] = null;
-			ptrBegin = (ptrBegin + 1) % buffer.length;
-			return data;
+			return count;
 		}
 	}
 
+	/**
+	 * Waits until the FIFO is not empty. The caller must hold the queue lock.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, 0 to wait forever
+	 * @return <code>true</code> if data is available, <code>false</code> if
+	 *         the timeout has elapsed or the calling thread has been
+	 *         interrupted while waiting
+	 */
+	private boolean awaitData(long timeout) {
+		long deadline = QueueMonitor.dataDeadline(timeout);
+		while (ptrBegin == ptrEnd) {
+			if (!monitor.awaitData(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the oldest data. The FIFO must not be empty and the caller must
+	 * hold the queue lock.
+	 *
+	 * @return the oldest data
+	 */
+	private T take() {
+		Object[] buffer = this.buffer;
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[ptrBegin];
+		buffer[ptrBegin] = null;
+		ptrBegin = (ptrBegin + 1) % buffer.length;
+		return data;
+	}
+
 	/**
 	 * This method adds the <code>data</code> to the FIFO. When the FIFO is
 	 * full, {@link QueueFullException} is thrown.
@@ -83,8 +144,15 @@ public class FixedLengthFIFOQueue<T> extends Queue<T> {
 	 * @param data
 	 *            the new data to be added to the FIFO
 	 */
+	@Override
 	public void add(T data) {
 		synchronized (buffer) {
+			if (coalesce(data)) {
+				// data cancelled a pending data, nothing to add: the queue may
+				// have become idle
+				monitor.dataRemoved();
+				return;
+			}
 			int eventQueueLength = buffer.length;
 			// Check if the queue is not full
 			int nextEnd = (ptrEnd + 1) % eventQueueLength; // ptrEnd is read
@@ -97,9 +165,96 @@ public class FixedLengthFIFOQueue<T> extends Queue<T> {
 			// add the new event at the last index : ptrEnd
 			buffer[ptrEnd] = data;
 			ptrEnd = (ptrEnd + 1) % eventQueueLength;
-			// notify eventually the waiting pumpEvent Thread
-			buffer.notify();
+			// notify eventually the waiting pumpEvent Thread (the threads
+			// waiting for the queue to be idle are waiting on the same monitor)
+			monitor.dataAdded();
+		}
+	}
+
+	@Override
+	public boolean waitIdle(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (buffer) {
+			while (ptrBegin != ptrEnd || !monitor.hasParkedConsumer()) {
+				if (!monitor.awaitIdle(deadline)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Called by {@link #add(Object)} with the queue lock held, before the
+	 * <code>data</code> is added. Subclasses may override this method to
+	 * collapse the <code>data</code> with a pending one (see
+	 * {@link #removePending(int)}).<br/>
+	 * The default behaviour is to never coalesce.
+	 *
+	 * @param data
+	 *            the data to be added to the FIFO
+	 * @return <code>true</code> if the <code>data</code> must not be added to
+	 *         the FIFO, <code>false</code> otherwise
+	 */
+	protected boolean coalesce(T data) {
+		return false;
+	}
+
+	/**
+	 * Gets the number of pending data. The caller must hold the queue lock.
+	 *
+	 * @return the number of pending data
+	 */
+	protected int getPendingCount() {
+		int length = buffer.length;
+		return (ptrEnd - ptrBegin + length) % length;
+	}
+
+	/**
+	 * Gets a pending data. The caller must hold the queue lock.
+	 *
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 * @return the pending data
+	 */
+	protected T getPending(int index) {
+		Object[] buffer = this.buffer;
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[(ptrBegin + index) % buffer.length];
+		return data;
+	}
+
+	/**
+	 * Removes a pending data. The following data are shifted to keep the FIFO
+	 * order. The caller must hold the queue lock.
+	 *
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 */
+	protected void removePending(int index) {
+		removeAt((ptrBegin + index) % buffer.length);
+	}
+
+	/**
+	 * Removes the pending data stored at the given index of {@link #buffer}.
+	 * The following data are shifted to keep the FIFO order. The caller must
+	 * hold the queue lock.
+	 *
+	 * @param index
+	 *            the index of the data to remove, between {@link #ptrBegin}
+	 *            (inclusive) and {@link #ptrEnd} (exclusive)
+	 */
+	protected void removeAt(int index) {
+		Object[] buffer = this.buffer;
+		int eventQueueLength = buffer.length;
+		int ptr = index;
+		int next;
+		while ((next = (ptr + 1) % eventQueueLength) != ptrEnd) {
+			buffer[ptr] = buffer[next];
+			ptr = next;
 		}
+		buffer[ptr] = null;
+		ptrEnd = ptr;
 	}
 
 }
@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.util;
+
+/**
+ * Queue with several FIFO lanes of different priorities. Characteristics:
+ * <ul>
+ * <li>Fixed buffer size per lane</li>
+ * <li>Lane 0 has the highest priority</li>
+ * <li>Strict draining: a lane is polled only when all the lanes of higher
+ * priority are empty</li>
+ * <li>Weighted draining: each lane is polled in turn, for at most its weight
+ * consecutive data, so that no lane starves</li>
+ * <li>Simple synchronization on the lanes array</li>
+ * <li>A {@link QueueFullException} is thrown if the lane is full</li>
+ * <li>The lane of the data is selected by {@link #selectLane(Object)}, pending
+ * data may be coalesced (see {@link #coalesce(Object)})</li>
+ * </ul>
+ *
+ * @param <T>
+ *            data type
+ */
+public class MultiLaneFIFOQueue<T> extends Queue<T> {
+
+	/**
+	 * Ring buffers of the lanes, also used as monitor.
+	 */
+	private final Object[][] lanes;
+
+	/**
+	 * Pointers on next data to read, per lane.
+	 */
+	private final int[] ptrBegins;
+
+	/**
+	 * Pointers on next data to add, per lane.
+	 */
+	private final int[] ptrEnds;
+
+	/**
+	 * Weights of the lanes, null for strict draining.
+	 */
+	private final int[] weights;
+
+	/**
+	 * Lane currently polled (weighted draining).
+	 */
+	private int currentLane;
+
+	/**
+	 * Number of data polled from the current lane (weighted draining).
+	 */
+	private int currentLanePolled;
+
+	/**
+	 * The monitor of the consumers and of the threads waiting in
+	 * {@link #waitIdle(long)}, on the {@link #lanes} lock.
+	 */
+	private final QueueMonitor monitor;
+
+	/**
+	 * Creates a queue with lanes drained by strict priority.
+	 *
+	 * @param laneCount
+	 *            the number of lanes
+	 * @param bufferSize
+	 *            the FIFO size of each lane
+	 */
+	public MultiLaneFIFOQueue(int laneCount, int bufferSize) {
+		this(laneCount, bufferSize, null);
+	}
+
+	/**
+	 * Creates a queue with lanes drained by weighted priority.
+	 *
+	 * @param laneCount
+	 *            the number of lanes
+	 * @param bufferSize
+	 *            the FIFO size of each lane
+	 * @param weights
+	 *            the maximum number of consecutive data polled from each lane
+	 *            when the other lanes are not empty, or null for strict
+	 *            priority
+	 * @throws IllegalArgumentException
+	 *             if there is no lane, or if the weights do not match the
+	 *             lanes or are not strictly positive
+	 */
+	public MultiLaneFIFOQueue(int laneCount, int bufferSize, int[] weights) {
+		super();
+		if (laneCount <= 0 || (weights != null && weights.length != laneCount)) {
+			throw new IllegalArgumentException();
+		}
+		if (weights != null) {
+			for (int weight : weights) {
+				if (weight <= 0) {
+					throw new IllegalArgumentException();
+				}
+			}
+		}
+		this.lanes = new Object[laneCount][bufferSize + 1]; // +1: one index in
+															// each lane is
+															// always empty
+		this.ptrBegins = new int[laneCount];
+		this.ptrEnds = new int[laneCount];
+		this.weights = weights;
+		this.monitor = new QueueMonitor(lanes);
+	}
+
+	/**
+	 * Gets the number of lanes of this queue.
+	 *
+	 * @return the number of lanes
+	 */
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Returns the oldest data of the lane to poll or waits for it. This method
+	 * blocks until data is available or the calling thread is interrupted.
+	 *
+	 * @return the next data, or <code>null</code> if the calling thread has
+	 *         been interrupted while waiting
+	 */
+	@Override
+	public T poll() {
+		synchronized (lanes) {
+			return awaitData(0) ? take() : null;
+		}
+	}
+
+	@Override
+	public T tryPoll() {
+		synchronized (lanes) {
+			return !isEmpty() ? take() : null;
+		}
+	}
+
+	@Override
+	public T poll(long timeout) {
+		if (timeout <= 0) {
+			return tryPoll();
+		}
+		synchronized (lanes) {
+			return awaitData(timeout) ? take() : null;
+		}
+	}
+
+	@Override
+	public int drainTo(Object[] array, int max) {
+		synchronized (lanes) {
+			int count = 0;
+			while (count < max && !isEmpty()) {
+				array[count++] = take();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Waits until a lane is not empty. The caller must hold the queue lock.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, 0 to wait forever
+	 * @return <code>true</code> if data is available, <code>false</code> if
+	 *         the timeout has elapsed or the calling thread has been
+	 *         interrupted while waiting
+	 */
+	private boolean awaitData(long timeout) {
+		long deadline = QueueMonitor.dataDeadline(timeout);
+		while (isEmpty()) {
+			if (!monitor.awaitData(deadline)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the oldest data of the lane to poll. The queue must not be empty
+	 * and the caller must hold the queue lock.
+	 *
+	 * @return the data
+	 */
+	private T take() {
+		int lane = nextLane();
+		Object[] buffer = lanes[lane];
+		int ptrBegin = ptrBegins[lane];
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[ptrBegin];
+		buffer[ptrBegin] = null;
+		ptrBegins[lane] = (ptrBegin + 1) % buffer.length;
+		return data;
+	}
+
+	/**
+	 * Selects the lane to poll. The caller must hold the queue lock.
+	 *
+	 * @return the lane, or -1 if the queue is empty
+	 */
+	private int nextLane() {
+		int[] ptrBegins = this.ptrBegins;
+		int[] ptrEnds = this.ptrEnds;
+		int laneCount = ptrBegins.length;
+		int[] weights = this.weights;
+		if (weights == null) {
+			for (int lane = 0; lane < laneCount; lane++) {
+				if (ptrBegins[lane] != ptrEnds[lane]) {
+					return lane;
+				}
+			}
+			return -1;
+		}
+		// laneCount + 1: the current lane may be polled again with a new credit
+		for (int i = laneCount + 1; --i >= 0;) {
+			int lane = currentLane;
+			if (ptrBegins[lane] != ptrEnds[lane] && currentLanePolled < weights[lane]) {
+				++currentLanePolled;
+				return lane;
+			}
+			currentLane = (lane + 1) % laneCount;
+			currentLanePolled = 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method adds the <code>data</code> to the lane selected by
+	 * {@link #selectLane(Object)}. When this lane is full,
+	 * {@link QueueFullException} is thrown.
+	 *
+	 * @param data
+	 *            the new data to be added
+	 */
+	@Override
+	public void add(T data) {
+		addToLane(data, -1);
+	}
+
+	/**
+	 * This method adds the <code>data</code> to the given lane, without
+	 * calling {@link #selectLane(Object)}. When this lane is full,
+	 * {@link QueueFullException} is thrown.
+	 *
+	 * @param data
+	 *            the new data to be added
+	 * @param lane
+	 *            the lane, between 0 (highest priority) and
+	 *            {@link #getLaneCount()} (exclusive)
+	 * @throws IndexOutOfBoundsException
+	 *             if the lane does not exist
+	 */
+	public void add(T data, int lane) {
+		if (lane < 0 || lane >= lanes.length) {
+			throw new IndexOutOfBoundsException(Integer.toString(lane));
+		}
+		addToLane(data, lane);
+	}
+
+	/**
+	 * Adds the <code>data</code> to a lane, unless it is coalesced.
+	 *
+	 * @param data
+	 *            the new data to be added
+	 * @param lane
+	 *            the lane, or -1 to select it with {@link #selectLane(Object)}
+	 */
+	private void addToLane(T data, int lane) {
+		Object[][] lanes = this.lanes;
+		synchronized (lanes) {
+			if (coalesce(data)) {
+				// data cancelled a pending data, nothing to add: the queue may
+				// have become idle
+				monitor.dataRemoved();
+				return;
+			}
+			if (lane == -1) {
+				lane = selectLane(data);
+			}
+			Object[] buffer = lanes[lane];
+			int eventQueueLength = buffer.length;
+			int ptrEnd = ptrEnds[lane];
+			int nextEnd = (ptrEnd + 1) % eventQueueLength;
+			if (nextEnd == ptrBegins[lane]) {
+				// lane is full
+				throw new QueueFullException(data);
+			}
+			buffer[ptrEnd] = data;
+			ptrEnds[lane] = nextEnd;
+			// notify eventually the waiting consumer (the threads waiting for
+			// the queue to be idle are waiting on the same monitor)
+			monitor.dataAdded();
+		}
+	}
+
+	/**
+	 * Called by {@link #add(Object)} with the queue lock held, to select the
+	 * lane of the <code>data</code>.<br/>
+	 * The default behaviour is to select the lane of lowest priority.
+	 *
+	 * @param data
+	 *            the data to be added
+	 * @return the lane, between 0 (highest priority) and
+	 *         {@link #getLaneCount()} (exclusive)
+	 */
+	protected int selectLane(T data) {
+		return lanes.length - 1;
+	}
+
+	/**
+	 * Called by {@link #add(Object)} and {@link #add(Object, int)} with the
+	 * queue lock held, before the
+	 * <code>data</code> is added. Subclasses may override this method to
+	 * collapse the <code>data</code> with a pending one (see
+	 * {@link #removePending(int, int)}).<br/>
+	 * The default behaviour is to never coalesce.
+	 *
+	 * @param data
+	 *            the data to be added
+	 * @return <code>true</code> if the <code>data</code> must not be added,
+	 *         <code>false</code> otherwise
+	 */
+	protected boolean coalesce(T data) {
+		return false;
+	}
+
+	/**
+	 * Gets the number of pending data in a lane. The caller must hold the queue
+	 * lock.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @return the number of pending data
+	 */
+	protected int getPendingCount(int lane) {
+		int length = lanes[lane].length;
+		return (ptrEnds[lane] - ptrBegins[lane] + length) % length;
+	}
+
+	/**
+	 * Gets a pending data of a lane. The caller must hold the queue lock.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 * @return the pending data
+	 */
+	protected T getPending(int lane, int index) {
+		Object[] buffer = lanes[lane];
+		@SuppressWarnings("unchecked")
+		T data = (T) buffer[(ptrBegins[lane] + index) % buffer.length];
+		return data;
+	}
+
+	/**
+	 * Removes a pending data of a lane. The following data are shifted to keep
+	 * the FIFO order. The caller must hold the queue lock.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param index
+	 *            the index of the data, 0 for the oldest one
+	 */
+	protected void removePending(int lane, int index) {
+		Object[] buffer = lanes[lane];
+		int eventQueueLength = buffer.length;
+		int ptrEnd = ptrEnds[lane];
+		int ptr = (ptrBegins[lane] + index) % eventQueueLength;
+		int next;
+		while ((next = (ptr + 1) % eventQueueLength) != ptrEnd) {
+			buffer[ptr] = buffer[next];
+			ptr = next;
+		}
+		buffer[ptr] = null;
+		ptrEnds[lane] = ptr;
+	}
+
+	@Override
+	public boolean waitIdle(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (lanes) {
+			while (!isEmpty() || !monitor.hasParkedConsumer()) {
+				if (!monitor.awaitIdle(deadline)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Tells whether all the lanes are empty. The caller must hold the queue
+	 * lock.
+	 *
+	 * @return <code>true</code> if there is no pending data
+	 */
+	private boolean isEmpty() {
+		int[] ptrBegins = this.ptrBegins;
+		int[] ptrEnds = this.ptrEnds;
+		for (int lane = ptrBegins.length; --lane >= 0;) {
+			if (ptrBegins[lane] != ptrEnds[lane]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -16,7 +16,12 @@ import java.lang.Thread.UncaughtExceptionHandler;
 /**
  * A pump poll on a {@link Queue}. Characteristics:
  * <ul>
- * <li>Once Pump is started, it cannot be stopped</li>
+ * <li>The pump may run in its own thread (see {@link #start(String)}), which
+ * can be stopped (see {@link #stop(long)}) and started again</li>
+ * <li>When the queue is empty, the pump thread parks on it until new data is
+ * available</li>
+ * <li>The pending data can be drained with a deadline (see
+ * {@link #drain(long)})</li>
  * </ul>
  *
  * @param <T>
@@ -41,6 +46,23 @@ public abstract class Pump<T> implements Runnable {
 	 */
 	private final int priority;
 
+	/**
+	 * The thread running the pump, null when the pump is not started. Guarded
+	 * by <code>this</code>.
+	 */
+	private Thread thread;
+
+	/**
+	 * Set to stop the running thread.
+	 */
+	private volatile boolean stopRequested;
+
+	/**
+	 * The data moved from the queue at once, null when the data are polled one
+	 * by one.
+	 */
+	private final Object[] batch;
+
 	/**
 	 * Create a pump on the queue.
 	 *
@@ -52,9 +74,28 @@ public abstract class Pump<T> implements Runnable {
 	 *            the uncaught exception handler
 	 */
 	public Pump(Queue<T> queue, int threadPriority, UncaughtExceptionHandler ueh) {
+		this(queue, threadPriority, ueh, 1);
+	}
+
+	/**
+	 * Create a pump on the queue, which moves up to <code>batchSize</code>
+	 * pending data at once from the queue before executing them.
+	 *
+	 * @param queue
+	 *            the queue to poll
+	 * @param threadPriority
+	 *            the requested priority of the thread used to run the pump
+	 * @param ueh
+	 *            the uncaught exception handler
+	 * @param batchSize
+	 *            the maximum number of data moved at once from the queue
+	 * @see Queue#drainTo(Object[], int)
+	 */
+	public Pump(Queue<T> queue, int threadPriority, UncaughtExceptionHandler ueh, int batchSize) {
 		this.queue = queue;
 		this.priority = threadPriority;
 		this.uncaughtExceptionHandler = ueh;
+		this.batch = batchSize > 1 ? new Object[batchSize] : null;
 	}
 
 	/**
@@ -62,15 +103,144 @@ public abstract class Pump<T> implements Runnable {
 	 */
 	@Override
 	public void run() {
-		while (true) {
+		try {
+			Object[] batch = this.batch;
+			while (!stopRequested) {
+				if (batch != null && executeBatch(batch)) {
+					continue;
+				}
+				try {
+					T data = queue.poll();
+					if (data != null) { // null when interrupted
+						// Then, execute the event
+						execute(data);
+					}
+				} catch (Throwable e) {
+					crash(e);
+				}
+			}
+		} finally {
+			synchronized (this) {
+				if (thread == Thread.currentThread()) {
+					thread = null;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the pending data from the queue and executes them all, even if the
+	 * pump is requested to stop meanwhile.
+	 *
+	 * @param batch
+	 *            the array receiving the pending data
+	 * @return <code>true</code> if some data have been executed,
+	 *         <code>false</code> if the queue is empty
+	 */
+	private boolean executeBatch(Object[] batch) {
+		int count;
+		try {
+			count = queue.drainTo(batch, batch.length);
+		} catch (Throwable e) {
+			crash(e);
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			// the queue has moved data of its type
+			@SuppressWarnings("unchecked")
+			T data = (T) batch[i];
+			batch[i] = null;
 			try {
-				T data = queue.poll();
-				// Then, execute the event
 				execute(data);
 			} catch (Throwable e) {
 				crash(e);
 			}
 		}
+		return count != 0;
+	}
+
+	/**
+	 * Starts a new thread running this pump, with the requested priority.
+	 *
+	 * @param threadName
+	 *            the name of the thread
+	 * @throws IllegalStateException
+	 *             if the pump is already running
+	 * @see #getPriority()
+	 */
+	public synchronized void start(String threadName) {
+		if (thread != null) {
+			throw new IllegalStateException();
+		}
+		stopRequested = false;
+		Thread t = new Thread(this, threadName);
+		t.setPriority(priority);
+		thread = t;
+		t.start();
+	}
+
+	/**
+	 * Stops the thread running this pump, started by {@link #start(String)}.
+	 * The data being executed is completed (with the rest of its batch, if
+	 * any), the pending data are kept in the queue for a subsequent start of
+	 * the pump.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait for the thread to terminate, in
+	 *            milliseconds
+	 * @return <code>true</code> if the pump is stopped, <code>false</code> if
+	 *         the thread is still running after the timeout
+	 */
+	public synchronized boolean stop(long timeout) {
+		Thread t = thread;
+		if (t == null) {
+			return true;
+		}
+		stopRequested = true;
+		t.interrupt();
+		if (t == Thread.currentThread()) {
+			// called by the data execution: the pump stops when it returns
+			return false;
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		while (thread == t) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until all the data added to the queue have been executed. The pump
+	 * must be running, otherwise the pending data cannot be drained before the
+	 * timeout.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds
+	 * @return <code>true</code> if the pump is idle, <code>false</code> if the
+	 *         timeout has elapsed before
+	 * @see Queue#waitIdle(long)
+	 */
+	public boolean drain(long timeout) {
+		return queue.waitIdle(timeout);
+	}
+
+	/**
+	 * Tells whether a thread started by {@link #start(String)} is running this
+	 * pump.
+	 *
+	 * @return <code>true</code> if the pump is running
+	 */
+	public synchronized boolean isRunning() {
+		return thread != null;
 	}
 
 	/**
@@ -25,12 +25,103 @@ public abstract class Queue<T> {
 	public Queue() {
 	}
 
+	/**
+	 * Adds data to be processed.
+	 * 
+	 * @param data
+	 *            the data to add
+	 * @throws QueueFullException
+	 *             if the queue cannot hold more data
+	 * @throws UnsupportedOperationException
+	 *             if the queue is only filled by its own methods, as it is by
+	 *             default
+	 */
+	public void add(T data) {
+		throw new UnsupportedOperationException();
+	}
+
 	/**
 	 * Returns the next data to process. This method blocks until data is
-	 * available.
+	 * available or the calling thread is interrupted. In the latter case, the
+	 * interrupted status of the thread is cleared.
 	 * 
-	 * @return data to be processed
+	 * @return data to be processed, or <code>null</code> if the calling thread
+	 *         has been interrupted while waiting
 	 */
 	public abstract T poll();
 
+	/**
+	 * Returns the next data to process if any, without blocking. By default,
+	 * the queue cannot tell without blocking in {@link #poll()} and returns
+	 * <code>null</code>.
+	 * 
+	 * @return data to be processed, or <code>null</code> if the queue is empty
+	 */
+	public T tryPoll() {
+		return null;
+	}
+
+	/**
+	 * Returns the next data to process. This method blocks until data is
+	 * available, the timeout has elapsed or the calling thread is interrupted.
+	 * In the latter case, the interrupted status of the thread is cleared. By
+	 * default, the timeout is not supported: the method blocks in
+	 * {@link #poll()}.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, the method does not
+	 *            block if it is not strictly positive
+	 * @return data to be processed, or <code>null</code> if the timeout has
+	 *         elapsed or the calling thread has been interrupted while waiting
+	 */
+	public T poll(long timeout) {
+		if (timeout <= 0) {
+			return tryPoll();
+		}
+		return poll();
+	}
+
+	/**
+	 * Moves the data to process to the given array, in the order
+	 * {@link #poll()} would return them, without blocking. The data are moved
+	 * under a single acquisition of the queue lock; by default, they are moved
+	 * one by one with {@link #tryPoll()}.
+	 * 
+	 * @param array
+	 *            the array to fill from its first index; it is typed
+	 *            <code>Object[]</code> so that a generic caller does not need
+	 *            an array of the data type
+	 * @param max
+	 *            the maximum number of data to move, at most the array length
+	 * @return the number of data moved, 0 if the queue is empty
+	 */
+	public int drainTo(Object[] array, int max) {
+		int count = 0;
+		while (count < max) {
+			T data = tryPoll();
+			if (data == null) {
+				break;
+			}
+			array[count++] = data;
+		}
+		return count;
+	}
+
+	/**
+	 * Waits until the queue is idle: it is empty and its consumer is parked in
+	 * {@link #poll()} or {@link #poll(long)}, waiting for new data. Once idle,
+	 * all the data previously added to the queue have been processed by its
+	 * consumer. By default, the queue cannot tell and returns
+	 * <code>false</code> without waiting.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds
+	 * @return <code>true</code> if the queue is idle, <code>false</code> if the
+	 *         timeout has elapsed or the calling thread has been interrupted
+	 *         before
+	 */
+	public boolean waitIdle(long timeout) {
+		return false;
+	}
+
 }
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.util;
+
+/**
+ * Waits on the lock of a {@link Queue}, for the consumers waiting for data and
+ * for the threads waiting for the queue to be idle (see
+ * {@link Queue#waitIdle(long)}). The queue is idle when it is empty and a
+ * consumer is parked on it. Both kinds of threads wait on the queue lock: the
+ * caller of each method must hold it.
+ * <p>
+ * The waits are steps of the caller loops, which check the queue state again
+ * after each step.
+ */
+final class QueueMonitor {
+
+	/**
+	 * The lock of the queue.
+	 */
+	private final Object lock;
+
+	/**
+	 * Number of consumers parked on the empty queue.
+	 */
+	private int waitingConsumers;
+
+	/**
+	 * Number of threads waiting for the queue to be idle.
+	 */
+	private int waitingIdle;
+
+	/**
+	 * Creates the monitor of a queue.
+	 *
+	 * @param lock
+	 *            the lock of the queue
+	 */
+	QueueMonitor(Object lock) {
+		this.lock = lock;
+	}
+
+	/**
+	 * Computes the deadline of a wait for data.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait in milliseconds, 0 to wait forever
+	 * @return the deadline, 0 to wait forever
+	 */
+	static long dataDeadline(long timeout) {
+		return timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+	}
+
+	/**
+	 * Parks a consumer on the empty queue until data is added.
+	 *
+	 * @param deadline
+	 *            the deadline given by {@link #dataDeadline(long)}
+	 * @return <code>true</code> if the queue must be checked again,
+	 *         <code>false</code> if the deadline has passed or the calling
+	 *         thread has been interrupted while waiting
+	 */
+	boolean awaitData(long deadline) {
+		return awaitData(deadline, 0);
+	}
+
+	/**
+	 * Parks a consumer on the empty queue until data is added or a given time,
+	 * at which the queue has data to give without any addition.
+	 *
+	 * @param deadline
+	 *            the deadline given by {@link #dataDeadline(long)}
+	 * @param wakeUp
+	 *            the time at which the queue must be checked again, 0 if none
+	 * @return <code>true</code> if the queue must be checked again,
+	 *         <code>false</code> if the deadline has passed or the calling
+	 *         thread has been interrupted while waiting
+	 */
+	boolean awaitData(long deadline, long wakeUp) {
+		long remaining = 0; // wait forever
+		if (deadline != 0 || wakeUp != 0) {
+			long now = System.currentTimeMillis();
+			if (deadline != 0) {
+				remaining = deadline - now;
+				if (remaining <= 0) {
+					return false;
+				}
+			}
+			if (wakeUp != 0) {
+				long untilWakeUp = Math.max(wakeUp - now, 1);
+				remaining = remaining == 0 ? untilWakeUp : Math.min(remaining, untilWakeUp);
+			}
+		}
+		Object lock = this.lock;
+		if (++waitingConsumers == 1 && waitingIdle != 0) {
+			// the queue has become idle
+			lock.notifyAll();
+		}
+		try {
+			lock.wait(remaining);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		} finally {
+			--waitingConsumers;
+		}
+	}
+
+	/**
+	 * Waits for the queue to be idle.
+	 *
+	 * @param deadline
+	 *            the deadline of the wait
+	 * @return <code>true</code> if the queue must be checked again,
+	 *         <code>false</code> if the deadline has passed or the calling
+	 *         thread has been interrupted while waiting
+	 */
+	boolean awaitIdle(long deadline) {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			return false;
+		}
+		++waitingIdle;
+		try {
+			lock.wait(remaining);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		} finally {
+			--waitingIdle;
+		}
+	}
+
+	/**
+	 * Tells whether a consumer is parked on the queue.
+	 *
+	 * @return <code>true</code> if the queue is idle when it is empty
+	 */
+	boolean hasParkedConsumer() {
+		return waitingConsumers != 0;
+	}
+
+	/**
+	 * Wakes up the parked consumers up when data has been added. The threads
+	 * waiting for the queue to be idle are woken up too, they wait again.
+	 */
+	void dataAdded() {
+		lock.notifyAll();
+	}
+
+	/**
+	 * Wakes up the threads waiting for the queue to be idle when pending data
+	 * has been removed without being polled, since the queue may have become
+	 * idle.
+	 */
+	void dataRemoved() {
+		if (waitingIdle != 0) {
+			lock.notifyAll();
+		}
+	}
+}
@@ -14,11 +14,17 @@ package org.eclipse.edje.test;
 
 import java.io.IOException;
 import java.security.Permission;
+import java.security.PermissionCollection;
+import java.util.Collections;
 
+import org.eclipse.edje.Authorization;
+import org.eclipse.edje.PermissionsAuthorizationPolicy;
 import org.eclipse.edje.io.Connection;
 import org.eclipse.edje.io.ConnectionFactory;
+import org.eclipse.edje.io.ConnectionNotFoundException;
 import org.eclipse.edje.io.ConnectionPermission;
 import org.eclipse.edje.io.Connector;
+import org.eclipse.edje.io.ProtocolConnectionFactory;
 import org.eclipse.edje.test.support.Util;
 import org.junit.After;
 import org.junit.Assert;
@@ -60,6 +66,129 @@ public class TestConnectionPermission01 {
 		checkOpen(false);
 	}
 
+	@Test
+	public void testWildcards() {
+		Assert.assertTrue("Exact", new ConnectionPermission("comm:COM1").implies(new ConnectionPermission("comm:COM1")));
+		Assert.assertTrue("Other", !new ConnectionPermission("comm:COM1").implies(new ConnectionPermission("comm:COM2")));
+		Assert.assertTrue("Prefix", new ConnectionPermission("comm:COM*").implies(new ConnectionPermission("comm:COM2")));
+		Assert.assertTrue("PrefixOther",
+				!new ConnectionPermission("comm:COM*").implies(new ConnectionPermission("comm:tty1")));
+		Assert.assertTrue("Protocol",
+				new ConnectionPermission("comm:*").implies(new ConnectionPermission("comm:COM*")));
+		Assert.assertTrue("ProtocolOther",
+				!new ConnectionPermission("comm:*").implies(new ConnectionPermission("custom:name")));
+		Assert.assertTrue("All", new ConnectionPermission("*").implies(new ConnectionPermission("custom:name")));
+	}
+
+	@Test
+	public void testPermissionCollection() {
+		PermissionCollection policy = new ConnectionPermission("*").newPermissionCollection();
+		policy.add(new ConnectionPermission("comm:COM*"));
+		policy.add(new ConnectionPermission("comm:tty1"));
+		policy.add(new ConnectionPermission("custom:*"));
+
+		Assert.assertTrue("Prefix", policy.implies(new ConnectionPermission("comm:COM12;baudrate=9600")));
+		Assert.assertTrue("PrefixSelf", policy.implies(new ConnectionPermission("comm:COM")));
+		Assert.assertTrue("Exact", policy.implies(new ConnectionPermission("comm:tty1")));
+		Assert.assertTrue("ExactLonger", !policy.implies(new ConnectionPermission("comm:tty10")));
+		Assert.assertTrue("ExactShorter", !policy.implies(new ConnectionPermission("comm:tty")));
+		Assert.assertTrue("Protocol", policy.implies(new ConnectionPermission("custom:name")));
+		Assert.assertTrue("Other", !policy.implies(new ConnectionPermission("http:name")));
+		Assert.assertTrue("Elements", Collections.list(policy.elements()).size() == 3);
+
+		policy.add(new ConnectionPermission("*"));
+		Assert.assertTrue("All", policy.implies(new ConnectionPermission("http:name")));
+	}
+
+	@Test
+	public void testOpenAuthorizationPolicy() {
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new ConnectionPermission("custom:*"), new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			checkOpen(true);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new ConnectionPermission("comm:*"), new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			checkOpen(false);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testSharedFactory() throws IOException {
+		String packageName = this.getClass().getPackage().getName() + ".connection";
+		Connector.invalidate();
+		int instances = org.eclipse.edje.test.connection.shared.ConnectionFactory.Instances;
+		Connector.open(packageName, "shared:a").close();
+		Connector.open(packageName, "shared:b").close();
+		Assert.assertTrue("Shared",
+				org.eclipse.edje.test.connection.shared.ConnectionFactory.Instances == instances + 1);
+		Connector.invalidate();
+		Connector.open(packageName, "shared:a").close();
+		Assert.assertTrue("Invalidated",
+				org.eclipse.edje.test.connection.shared.ConnectionFactory.Instances == instances + 2);
+	}
+
+	@Test
+	public void testInvalidatePermission() {
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(
+				new Permission[] { new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			Connector.invalidate();
+			Assert.assertTrue("InvalidateDenied", false);
+		} catch (SecurityException e) {
+			// expected
+		} finally {
+			Authorization.setPolicy(null);
+		}
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new RuntimePermission("registerConnectionProtocol"), new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			Connector.invalidate();
+		} finally {
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testRegisterProtocol() throws IOException {
+		ProtocolConnectionFactory factory = new ProtocolConnectionFactory() {
+
+			@Override
+			public Connection open(String url) throws IOException {
+				return new Connection() {
+
+					@Override
+					public void close() throws IOException {
+
+					}
+				};
+			}
+
+			@Override
+			public String[] getProtocols() {
+				return new String[] { "registered", "other" };
+			}
+		};
+		Connector.registerProtocol(factory);
+		try {
+			Connector.open("registered:a").close();
+			Connector.open(this.getClass().getPackage().getName() + ".connection", "other:b").close();
+		} finally {
+			Connector.unregisterProtocol(factory);
+		}
+		try {
+			Connector.open("registered:a").close();
+			Assert.assertTrue("Unregistered", false);
+		} catch (ConnectionNotFoundException e) {
+			// expected
+		}
+	}
+
 	private void checkOpen(boolean expectedSuccess) {
 		try (Connection c = Connector.open(this.getClass().getPackage().getName() + ".connection", "custom:name")) {
 			Util.check("checkOpenCustom-OK", c != null, expectedSuccess);
@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.test;
+
+import java.util.ArrayList;
+
+import org.eclipse.edje.test.support.SynchroSupport;
+import org.eclipse.edje.util.ElasticFIFOQueue;
+import org.eclipse.edje.util.EventLoop;
+import org.eclipse.edje.util.EventLoop.Readiness;
+import org.eclipse.edje.util.EventLoop.ScheduledTask;
+import org.eclipse.edje.util.FixedLengthFIFOQueue;
+import org.eclipse.edje.util.MultiLaneFIFOQueue;
+import org.eclipse.edje.util.Pump;
+import org.eclipse.edje.util.Queue;
+import org.eclipse.edje.util.QueueFullException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of the queues of the event pumps.
+ */
+public class TestEventQueues01 {
+
+	static Class<TestEventQueues01> clazz = TestEventQueues01.class;
+
+	@Test
+	public void testPoll() {
+		final FixedLengthFIFOQueue<String> queue = new FixedLengthFIFOQueue<>(4);
+		// non-blocking and timed polls on an empty queue
+		Assert.assertTrue("TryPollEmpty", queue.tryPoll() == null);
+		long start = System.currentTimeMillis();
+		Assert.assertTrue("PollTimeout", queue.poll(50) == null);
+		Assert.assertTrue("PollTimeoutElapsed", System.currentTimeMillis() - start >= 50);
+
+		// timed poll of data added meanwhile
+		new Thread() {
+			@Override
+			public void run() {
+				SynchroSupport.sleep(50);
+				queue.add("a");
+			}
+		}.start();
+		Assert.assertEquals("PollTimed", "a", queue.poll(10000));
+
+		// bulk drain, bounded by the array
+		queue.add("b");
+		queue.add("c");
+		queue.add("d");
+		String[] array = new String[2];
+		Assert.assertEquals("DrainTo", 2, queue.drainTo(array, array.length));
+		Assert.assertTrue("DrainToOrder", "b".equals(array[0]) && "c".equals(array[1]));
+		Assert.assertEquals("DrainToRest", 1, queue.drainTo(array, array.length));
+		Assert.assertEquals("DrainToRest1", "d", array[0]);
+		Assert.assertEquals("DrainToEmpty", 0, queue.drainTo(array, array.length));
+	}
+
+	@Test
+	public void testPollOnlyQueue() {
+		// a queue written against the original Queue, which only had poll()
+		Queue<String> queue = new Queue<String>() {
+			private int count;
+
+			@Override
+			public String poll() {
+				return Integer.toString(++count);
+			}
+		};
+		try {
+			queue.add("a");
+			Assert.assertTrue("Add", false);
+		} catch (UnsupportedOperationException e) {
+			// not supported by default
+		}
+		Assert.assertTrue("TryPoll", queue.tryPoll() == null);
+		Assert.assertTrue("PollNoTimeout", queue.poll(0) == null);
+		Assert.assertEquals("PollTimed", "1", queue.poll(50));
+		Assert.assertEquals("DrainTo", 0, queue.drainTo(new Object[2], 2));
+		Assert.assertTrue("WaitIdle", !queue.waitIdle(50));
+	}
+
+	@Test
+	public void testBatch() {
+		final ArrayList<Integer> batches = new ArrayList<>();
+		FixedLengthFIFOQueue<String> queue = new FixedLengthFIFOQueue<String>(10) {
+			@Override
+			public int drainTo(Object[] array, int max) {
+				int count = super.drainTo(array, max);
+				if (count != 0) {
+					synchronized (batches) {
+						batches.add(Integer.valueOf(count));
+					}
+				}
+				return count;
+			}
+		};
+		final ArrayList<String> executed = new ArrayList<>();
+		Pump<String> pump = new Pump<String>(queue, Thread.NORM_PRIORITY, null, 3) {
+			@Override
+			public void execute(String data) {
+				synchronized (executed) {
+					executed.add(data);
+				}
+			}
+		};
+		// pending before the pump starts: moved by batches of 3
+		String[] data = { "a", "b", "c", "d", "e", "f", "g" };
+		for (String d : data) {
+			queue.add(d);
+		}
+		pump.start("TestBatchPump");
+		try {
+			Assert.assertTrue("BatchDrain", pump.drain(10000));
+			synchronized (executed) {
+				Assert.assertEquals("BatchExecuted", data.length, executed.size());
+				for (int i = 0; i < data.length; i++) {
+					Assert.assertEquals("BatchOrder" + i, data[i], executed.get(i));
+				}
+			}
+			synchronized (batches) {
+				Assert.assertEquals("Batches", 3, batches.size());
+				Assert.assertEquals("Batch0", 3, batches.get(0).intValue());
+				Assert.assertEquals("Batch1", 3, batches.get(1).intValue());
+				Assert.assertEquals("Batch2", 1, batches.get(2).intValue());
+			}
+		} finally {
+			Assert.assertTrue("BatchStop", pump.stop(10000));
+		}
+	}
+
+	@Test
+	public void testLaneOverflow() {
+		MultiLaneFIFOQueue<String> queue = new MultiLaneFIFOQueue<>(2, 2);
+		queue.add("a", 0);
+		queue.add("b", 0);
+		checkFull(queue, "c", 0);
+		// the other lane is not affected
+		queue.add("d", 1);
+		queue.add("e", 1);
+		checkFull(queue, "f", 1);
+
+		// strict priority
+		Assert.assertEquals("LanePoll0", "a", queue.tryPoll());
+		Assert.assertEquals("LanePoll1", "b", queue.tryPoll());
+		Assert.assertEquals("LanePoll2", "d", queue.tryPoll());
+		// room again
+		queue.add("c", 0);
+		Assert.assertEquals("LanePoll3", "c", queue.tryPoll());
+		Assert.assertEquals("LanePoll4", "e", queue.tryPoll());
+		Assert.assertTrue("LaneEmpty", queue.tryPoll() == null);
+	}
+
+	@Test
+	public void testLaneWeights() {
+		MultiLaneFIFOQueue<String> queue = new MultiLaneFIFOQueue<>(2, 4, new int[] { 2, 1 });
+		queue.add("a", 0);
+		queue.add("b", 0);
+		queue.add("c", 0);
+		queue.add("x", 1);
+		queue.add("y", 1);
+		// at most 2 from lane 0 then 1 from lane 1, in turn
+		String[] expected = { "a", "b", "x", "c", "y" };
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals("WeightedPoll" + i, expected[i], queue.tryPoll());
+		}
+	}
+
+	@Test
+	public void testElastic() {
+		ElasticFIFOQueue<String> queue = new ElasticFIFOQueue<>(2, 2, 5);
+		Assert.assertEquals("ElasticInitial", 2, queue.getCapacity());
+		queue.add("a");
+		queue.add("b");
+		Assert.assertEquals("ElasticFull", 2, queue.getCapacity());
+		// grows by a segment when full
+		queue.add("c");
+		Assert.assertEquals("ElasticGrown", 4, queue.getCapacity());
+		queue.add("d");
+		// up to the maximum capacity
+		queue.add("e");
+		Assert.assertEquals("ElasticMax", 5, queue.getCapacity());
+		try {
+			queue.add("f");
+			Assert.assertTrue("ElasticCap", false);
+		} catch (QueueFullException e) {
+			// expected
+		}
+		Assert.assertEquals("ElasticHighWaterMark", 5, queue.getHighWaterMark());
+
+		String[] expected = { "a", "b", "c", "d", "e" };
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals("ElasticOrder" + i, expected[i], queue.tryPoll());
+		}
+		// not parked yet: the capacity is kept
+		Assert.assertEquals("ElasticKept", 5, queue.getCapacity());
+		queue.resetHighWaterMark();
+		Assert.assertEquals("ElasticReset", 0, queue.getHighWaterMark());
+
+		// shrinks by segments, down to the initial capacity, when the consumer
+		// parks
+		Assert.assertTrue("ElasticPollEmpty", queue.poll(50) == null);
+		Assert.assertTrue("ElasticShrunk", queue.getCapacity() < 5);
+		Assert.assertTrue("ElasticPollEmpty2", queue.poll(50) == null);
+		Assert.assertEquals("ElasticInitialAgain", 2, queue.getCapacity());
+		queue.add("g");
+		Assert.assertEquals("ElasticHighWaterMark2", 1, queue.getHighWaterMark());
+
+		try {
+			new ElasticFIFOQueue<String>(4, 2, 3);
+			Assert.assertTrue("ElasticArgs", false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLoopScheduling() {
+		EventLoop loop = new EventLoop(2, 8, Thread.NORM_PRIORITY, null);
+		ArrayList<String> executed = new ArrayList<>();
+		// pending before the loop starts
+		ScheduledTask late = loop.schedule(new Record(executed, "late"), 200);
+		ScheduledTask first = loop.schedule(new Record(executed, "first"), 0);
+		loop.schedule(new Record(executed, "second"), 0);
+		loop.post(1, new Record(executed, "posted"));
+		loop.post(0, new Record(executed, "urgent"));
+		Assert.assertTrue("LoopScheduled", late.isScheduled() && first.isScheduled());
+		loop.start("TestLoop");
+		try {
+			// due timers first, in deadline order, then the queues by priority
+			String[] expected = { "first", "second", "urgent", "posted", "late" };
+			awaitSize(executed, expected.length);
+			synchronized (executed) {
+				Assert.assertEquals("LoopExecuted", expected.length, executed.size());
+				for (int i = 0; i < expected.length; i++) {
+					Assert.assertEquals("LoopOrder" + i, expected[i], executed.get(i));
+				}
+			}
+			Assert.assertTrue("LoopOnce", !late.isScheduled() && !first.isScheduled());
+			Assert.assertTrue("LoopCancelExecuted", !late.cancel());
+
+			// periodic task, until cancelled
+			ArrayList<String> ticks = new ArrayList<>();
+			ScheduledTask periodic = loop.schedule(new Record(ticks, "tick"), 0, 20);
+			awaitSize(ticks, 3);
+			Assert.assertTrue("LoopPeriodic", periodic.isScheduled());
+			Assert.assertTrue("LoopCancel", periodic.cancel());
+			Assert.assertTrue("LoopCancelled", !periodic.isScheduled() && !periodic.cancel());
+			int count;
+			synchronized (ticks) {
+				count = ticks.size();
+			}
+			SynchroSupport.sleep(100);
+			synchronized (ticks) {
+				Assert.assertEquals("LoopNoTick", count, ticks.size());
+			}
+		} finally {
+			Assert.assertTrue("LoopStop", loop.stop(10000));
+		}
+	}
+
+	@Test
+	public void testLoopReadiness() {
+		EventLoop loop = new EventLoop(2, 8, Thread.NORM_PRIORITY, null);
+		ArrayList<String> executed = new ArrayList<>();
+		Readiness readiness = loop.newReadiness(0, new Record(executed, "ready"));
+		try {
+			loop.newReadiness(2, new Record(executed, "none"));
+			Assert.assertTrue("ReadinessQueue", false);
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		// the signals received before the callback runs are coalesced
+		readiness.signal();
+		readiness.signal();
+		readiness.signal();
+		loop.start("TestReadiness");
+		try {
+			Assert.assertTrue("ReadinessDrain", loop.drain(10000));
+			synchronized (executed) {
+				Assert.assertEquals("ReadinessOnce", 1, executed.size());
+			}
+			// a signal received afterwards wakes the parked loop up
+			readiness.signal();
+			awaitSize(executed, 2);
+			Assert.assertTrue("ReadinessDrain2", loop.drain(10000));
+			synchronized (executed) {
+				Assert.assertEquals("ReadinessTwice", 2, executed.size());
+			}
+		} finally {
+			Assert.assertTrue("ReadinessStop", loop.stop(10000));
+		}
+	}
+
+	@Test
+	public void testLoopShutdown() {
+		EventLoop loop = new EventLoop(1, 8, Thread.NORM_PRIORITY, null);
+		ArrayList<String> executed = new ArrayList<>();
+		loop.start("TestShutdown");
+		ScheduledTask pending = loop.schedule(new Record(executed, "pending"), 100);
+		Assert.assertTrue("ShutdownRunning", loop.isRunning());
+		Assert.assertTrue("ShutdownStop", loop.stop(10000));
+		Assert.assertTrue("ShutdownStopped", !loop.isRunning());
+
+		// nothing is executed while the loop is stopped
+		loop.post(new Record(executed, "posted"));
+		SynchroSupport.sleep(200);
+		synchronized (executed) {
+			Assert.assertEquals("ShutdownNothing", 0, executed.size());
+		}
+		Assert.assertTrue("ShutdownScheduled", pending.isScheduled());
+
+		// the pending tasks are executed once restarted
+		loop.start("TestShutdown");
+		try {
+			awaitSize(executed, 2);
+			synchronized (executed) {
+				Assert.assertEquals("ShutdownTimerFirst", "pending", executed.get(0));
+				Assert.assertEquals("ShutdownPosted", "posted", executed.get(1));
+			}
+		} finally {
+			Assert.assertTrue("ShutdownStop2", loop.stop(10000));
+		}
+	}
+
+	/**
+	 * Waits until a list holds the given number of elements, or 10 seconds.
+	 */
+	private static void awaitSize(ArrayList<String> list, int size) {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			synchronized (list) {
+				if (list.size() >= size) {
+					return;
+				}
+			}
+			SynchroSupport.sleep(10);
+		}
+	}
+
+	/**
+	 * Task recording its name in a list when executed.
+	 */
+	private static class Record implements Runnable {
+
+		private final ArrayList<String> list;
+
+		private final String name;
+
+		Record(ArrayList<String> list, String name) {
+			this.list = list;
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+			synchronized (list) {
+				list.add(name);
+			}
+		}
+	}
+
+	private static void checkFull(MultiLaneFIFOQueue<String> queue, String data, int lane) {
+		try {
+			queue.add(data, lane);
+			Assert.assertTrue("LaneFull" + lane, false);
+		} catch (QueueFullException e) {
+			// expected
+		}
+	}
+}
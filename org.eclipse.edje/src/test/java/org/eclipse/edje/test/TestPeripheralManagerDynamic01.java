@@ -12,15 +12,26 @@
 
 package org.eclipse.edje.test;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 
+import org.eclipse.edje.DefaultPeripheralRegistry;
+import org.eclipse.edje.Peripheral;
 import org.eclipse.edje.PeripheralManager;
+import org.eclipse.edje.RegistrationEvent;
+import org.eclipse.edje.RegistrationListener;
+import org.eclipse.edje.RegistrationSubscriber;
+import org.eclipse.edje.RegistrationSubscription;
+import org.eclipse.edje.SynchronousRegistrationListener;
 import org.eclipse.edje.comm.CommPort;
 import org.eclipse.edje.test.peripherals.UART;
 import org.eclipse.edje.test.peripherals.UsbPeripheral;
 import org.eclipse.edje.test.support.Listener;
 import org.eclipse.edje.test.support.SynchroSupport;
 import org.eclipse.edje.test.support.Util;
+import org.eclipse.edje.util.FixedLengthFIFOQueue;
+import org.eclipse.edje.util.Pump;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -113,9 +124,711 @@ public class TestPeripheralManagerDynamic01 {
 		}
 	}
 
+	@Test
+	public void testAwaitRegistration() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+
+		// already registered
+		PeripheralManager.register(UART.class, uart1);
+		Assert.assertTrue("AwaitRegistered", uart1 == PeripheralManager.awaitRegistration(UART.class, "com1", 0));
+
+		// registered later
+		new Thread() {
+			@Override
+			public void run() {
+				SynchroSupport.sleep(100);
+				PeripheralManager.register(UART.class, uart2);
+			}
+		}.start();
+		Assert.assertTrue("AwaitLater", uart2 == PeripheralManager.awaitRegistration(CommPort.class, "com2", 10000));
+
+		// never registered
+		Assert.assertTrue("AwaitTimeout", null == PeripheralManager.awaitRegistration(UART.class, "com3", 100));
+
+		// interrupted: told from a timeout by the interrupted status
+		final Thread waiter = Thread.currentThread();
+		new Thread() {
+			@Override
+			public void run() {
+				SynchroSupport.sleep(100);
+				waiter.interrupt();
+			}
+		}.start();
+		Assert.assertTrue("AwaitInterrupted", null == PeripheralManager.awaitRegistration(UART.class, "com3", 10000));
+		Assert.assertTrue("AwaitInterruptedStatus", Thread.interrupted());
+
+		PeripheralManager.unregister(uart1);
+		PeripheralManager.unregister(uart2);
+	}
+
+	@Test
+	public void testSubscribe() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+		final UART uart3 = new UART("com3", new HashMap<String, String>());
+		final ArrayList<RegistrationEvent<UART>> events = new ArrayList<>();
+		final ArrayList<RegistrationSubscription<UART>> subscriptions = new ArrayList<>();
+		PeripheralManager.subscribe(UART.class, new RegistrationSubscriber<UART>() {
+
+			@Override
+			public void onSubscribe(RegistrationSubscription<UART> subscription) {
+				subscriptions.add(subscription);
+				subscription.request(1);
+			}
+
+			@Override
+			public void onNext(RegistrationEvent<UART> event) {
+				synchronized (events) {
+					events.add(event);
+				}
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				Assert.assertTrue("SubscribeError", false);
+			}
+		}, 4);
+
+		PeripheralManager.register(UART.class, uart1);
+		PeripheralManager.register(UART.class, uart2);
+		PeripheralManager.register(UART.class, uart3);
+		waitFlush();
+		synchronized (events) {
+			// only one event requested
+			Assert.assertTrue("SubscribeRequest1", events.size() == 1 && events.get(0).getPeripheral() == uart1);
+		}
+
+		// the pending events are delivered on request
+		subscriptions.get(0).request(2);
+		synchronized (events) {
+			Assert.assertTrue("SubscribeRequest2", events.size() == 3 && events.get(2).getPeripheral() == uart3);
+		}
+
+		subscriptions.get(0).cancel();
+		PeripheralManager.unregister(uart1);
+		PeripheralManager.unregister(uart2);
+		PeripheralManager.unregister(uart3);
+		waitFlush();
+		synchronized (events) {
+			Assert.assertTrue("SubscribeCancel", events.size() == 3);
+		}
+	}
+
+	@Test
+	public void testListenerWithSnapshot() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+		final ArrayList<RegistrationEvent<UART>> events = new ArrayList<>();
+		RegistrationListener<UART> l = new RegistrationListener<UART>() {
+
+			@Override
+			public void peripheralRegistered(RegistrationEvent<UART> event) {
+				synchronized (events) {
+					events.add(event);
+				}
+			}
+
+			@Override
+			public void peripheralUnregistered(RegistrationEvent<UART> event) {
+				synchronized (events) {
+					events.add(event);
+				}
+			}
+		};
+
+		PeripheralManager.register(UART.class, uart1);
+		PeripheralManager.addRegistrationListenerWithSnapshot(l, UART.class);
+		synchronized (events) {
+			// the snapshot is notified before returning
+			Assert.assertTrue("Snapshot", events.size() == 1 && events.get(0).getPeripheral() == uart1);
+		}
+
+		PeripheralManager.register(UART.class, uart2);
+		// with priority lanes, the unregistration may overtake the registration
+		waitFlush();
+		PeripheralManager.unregister(uart1);
+		waitFlush();
+		synchronized (events) {
+			Assert.assertTrue("SnapshotTail", events.size() == 3);
+			Assert.assertTrue("SnapshotTail2", events.get(1).getPeripheral() == uart2);
+			Assert.assertTrue("SnapshotTail3", events.get(2).getPeripheral() == uart1 && !events.get(2).isRegistration());
+			Assert.assertTrue("SnapshotSequence",
+					events.get(1).getSequenceNumber() < events.get(2).getSequenceNumber());
+		}
+
+		PeripheralManager.removeRegistrationListener(l);
+		PeripheralManager.unregister(uart2);
+	}
+
+	@Test
+	public void testCoalescing() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+		RecordingListener<UART> l = new RecordingListener<>();
+		PeripheralManager.addRegistrationListener(l, UART.class);
+
+		// the pump is held by the listener while the next events are pending
+		boolean held = l.hold();
+		PeripheralManager.register(UART.class, uart1);
+		l.awaitHeld();
+		PeripheralManager.register(UART.class, uart2);
+		PeripheralManager.unregister(uart2);
+		l.release();
+		waitFlush();
+
+		RegistrationEvent<UART>[] events = l.getEvents();
+		checkEvent("CoalescingFirst", events[0], uart1, true);
+		if (held && Boolean.getBoolean("org.eclipse.edje.eventpump.coalesce")) {
+			// the pending register/unregister pair has been collapsed
+			Assert.assertTrue("Coalesced", events.length == 1);
+		} else {
+			Assert.assertTrue("NotCoalesced", events.length == 3);
+			checkEvent("NotCoalescedRegister", events[1], uart2, true);
+			checkEvent("NotCoalescedUnregister", events[2], uart2, false);
+		}
+
+		PeripheralManager.removeRegistrationListener(l);
+		PeripheralManager.unregister(uart1);
+	}
+
+	@Test
+	public void testSynchronousListener() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final Thread registeringThread = Thread.currentThread();
+		final RecordingListener<UART> synchronous = new SynchronousRecordingListener<>();
+		final boolean[] ordered = { true };
+		RecordingListener<UART> asynchronous = new RecordingListener<UART>() {
+			@Override
+			public void peripheralRegistered(RegistrationEvent<UART> event) {
+				// the synchronous listener has been notified first
+				ordered[0] &= synchronous.getEvents().length > getEvents().length;
+				super.peripheralRegistered(event);
+			}
+
+			@Override
+			public void peripheralUnregistered(RegistrationEvent<UART> event) {
+				ordered[0] &= synchronous.getEvents().length > getEvents().length;
+				super.peripheralUnregistered(event);
+			}
+		};
+		PeripheralManager.addRegistrationListener(synchronous, UART.class);
+		PeripheralManager.addRegistrationListener(asynchronous, UART.class);
+
+		// hold the pump once it has taken the registration: the pending
+		// events cannot be coalesced
+		boolean held = asynchronous.hold();
+		PeripheralManager.register(UART.class, uart1);
+		// notified before register() returns, by the registering thread
+		RegistrationEvent<UART>[] events = synchronous.getEvents();
+		Assert.assertTrue("SynchronousRegistered", events.length == 1);
+		checkEvent("SynchronousRegisteredEvent", events[0], uart1, true);
+		Assert.assertTrue("SynchronousThread", synchronous.getThreads()[0] == registeringThread);
+		if (Boolean.getBoolean("org.eclipse.edje.eventpump.inline")) {
+			// all the listeners are notified inline
+			Assert.assertTrue("InlineRegistered", asynchronous.getEvents().length == 1);
+			Assert.assertTrue("InlineThread", asynchronous.getThreads()[0] == registeringThread);
+		}
+
+		if (held) {
+			asynchronous.awaitHeld();
+		}
+		PeripheralManager.unregister(uart1);
+		asynchronous.release();
+		events = synchronous.getEvents();
+		Assert.assertTrue("SynchronousUnregistered", events.length == 2);
+		checkEvent("SynchronousUnregisteredEvent", events[1], uart1, false);
+		Assert.assertTrue("SynchronousThread2", synchronous.getThreads()[1] == registeringThread);
+
+		waitFlush();
+		events = asynchronous.getEvents();
+		Assert.assertTrue("AsynchronousEvents", events.length == 2);
+		checkEvent("AsynchronousRegistered", events[0], uart1, true);
+		checkEvent("AsynchronousUnregistered", events[1], uart1, false);
+		Assert.assertTrue("SynchronousFirst", ordered[0]);
+		if (!Boolean.getBoolean("org.eclipse.edje.eventpump.inline")) {
+			Assert.assertTrue("PumpThread", asynchronous.getThreads()[0] != registeringThread);
+		}
+
+		PeripheralManager.removeRegistrationListener(synchronous);
+		PeripheralManager.removeRegistrationListener(asynchronous);
+	}
+
+	@Test
+	public void testDispatchTables() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+		final UsbPeripheral usb1 = new UsbPeripheral("usb1", new HashMap<String, String>());
+		RecordingListener<CommPort> commPortListener = new RecordingListener<>();
+		RecordingListener<UART> uartListener = new RecordingListener<>();
+		PeripheralManager.addRegistrationListener(commPortListener, CommPort.class);
+		PeripheralManager.addRegistrationListener(uartListener, UART.class);
+
+		// the listeners of the supertypes are notified once each
+		PeripheralManager.register(UART.class, uart1);
+		PeripheralManager.register(UsbPeripheral.class, usb1);
+		waitFlush();
+		Assert.assertTrue("CommPortListener", commPortListener.getEvents().length == 2);
+		Assert.assertTrue("UARTListener", uartListener.getEvents().length == 1);
+
+		// the tables follow the listeners changes
+		PeripheralManager.removeRegistrationListener(uartListener);
+		PeripheralManager.register(UART.class, uart2);
+		waitFlush();
+		Assert.assertTrue("CommPortListener2", commPortListener.getEvents().length == 3);
+		Assert.assertTrue("RemovedListener", uartListener.getEvents().length == 1);
+
+		PeripheralManager.addRegistrationListener(uartListener, UART.class);
+		PeripheralManager.unregister(uart2);
+		waitFlush();
+		Assert.assertTrue("CommPortListener3", commPortListener.getEvents().length == 4);
+		Assert.assertTrue("AddedListener", uartListener.getEvents().length == 2);
+
+		PeripheralManager.removeRegistrationListener(commPortListener);
+		PeripheralManager.removeRegistrationListener(uartListener);
+		PeripheralManager.unregister(uart1);
+		PeripheralManager.unregister(usb1);
+		waitFlush();
+		Assert.assertTrue("RemovedListeners", commPortListener.getEvents().length == 4);
+	}
+
+	@Test
+	public void testNoListener() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UsbPeripheral usb1 = new UsbPeripheral("usb1", new HashMap<String, String>());
+		RecordingListener<UsbPeripheral> usbListener = new RecordingListener<>();
+		RecordingListener<UART> uartListener = new RecordingListener<>();
+		PeripheralManager.addRegistrationListener(usbListener, UsbPeripheral.class);
+
+		usbListener.hold();
+		PeripheralManager.register(UsbPeripheral.class, usb1);
+		usbListener.awaitHeld();
+		// nobody listens for UART: no event is queued
+		PeripheralManager.register(UART.class, uart1);
+		PeripheralManager.addRegistrationListener(uartListener, UART.class);
+		usbListener.release();
+		waitFlush();
+		Assert.assertTrue("NoEvent", uartListener.getEvents().length == 0);
+
+		PeripheralManager.unregister(uart1);
+		waitFlush();
+		Assert.assertTrue("Event", uartListener.getEvents().length == 1);
+
+		PeripheralManager.removeRegistrationListener(usbListener);
+		PeripheralManager.removeRegistrationListener(uartListener);
+		PeripheralManager.unregister(usb1);
+	}
+
+	@Test
+	public void testQuarantine() {
+		final DefaultPeripheralRegistry registry = newQuarantineRegistry();
+		FixedLengthFIFOQueue<RegistrationEvent<?>> queue = new FixedLengthFIFOQueue<>(10);
+		Pump<RegistrationEvent<?>> pump = new Pump<RegistrationEvent<?>>(queue, Thread.NORM_PRIORITY, null) {
+			@Override
+			public void execute(RegistrationEvent<?> data) {
+				registry.executeEvent(this, data);
+			}
+		};
+		registry.start(pump);
+
+		// always slow
+		RecordingListener<UART> slow = new RecordingListener<UART>() {
+			@Override
+			public void peripheralRegistered(RegistrationEvent<UART> event) {
+				super.peripheralRegistered(event);
+				SynchroSupport.sleep(200);
+			}
+		};
+		// slow on the second event, while the first listener is quarantined
+		RecordingListener<UART> slowLater = new RecordingListener<UART>() {
+			@Override
+			public void peripheralRegistered(RegistrationEvent<UART> event) {
+				super.peripheralRegistered(event);
+				if (getEvents().length == 2) {
+					SynchroSupport.sleep(200);
+				}
+			}
+		};
+		registry.addRegistrationListener(slow, UART.class);
+		registry.addRegistrationListener(slowLater, UART.class);
+
+		UART[] uarts = new UART[4];
+		for (int i = 0; i < uarts.length; i++) {
+			uarts[i] = new UART("com" + i, new HashMap<String, String>());
+			queue.add(registry.register(UART.class, uarts[i], true, false));
+		}
+		try {
+			Assert.assertTrue("QuarantineDrain", registry.drain(10000));
+			checkOnce("QuarantineSlow", slow.getEvents(), uarts);
+			checkOnce("QuarantineSlowLater", slowLater.getEvents(), uarts);
+			// the second event is notified by the event pump to slowLater,
+			// then by the quarantine pump to slow
+			RegistrationEvent<UART> pumped = slowLater.getEvents()[1];
+			RegistrationEvent<UART> quarantined = slow.getEvents()[1];
+			checkTimes("QuarantineTimesPump", pumped);
+			checkTimes("QuarantineTimes", quarantined);
+			Assert.assertTrue("QuarantineDispatchTime", pumped.getDispatchTime() < quarantined.getDispatchTime());
+			Assert.assertTrue("QuarantineEnqueueTime", pumped.getEnqueueTime() == quarantined.getEnqueueTime());
+		} finally {
+			Assert.assertTrue("QuarantineStop", registry.stopPumps(10000));
+		}
+
+		// no quarantine thread when the listeners are notified inline
+		DefaultPeripheralRegistry inlineRegistry = newQuarantineRegistry();
+		inlineRegistry.start((Pump<RegistrationEvent<?>>) null);
+		inlineRegistry.addRegistrationListener(slow, UART.class);
+		RegistrationEvent<UART> event = inlineRegistry.register(UART.class, new UART("com4", new HashMap<String, String>()),
+				true, false);
+		inlineRegistry.executeEvent(pump, event);
+		Thread[] threads = new Thread[Thread.activeCount() + 10];
+		for (int i = Thread.enumerate(threads); --i >= 0;) {
+			Assert.assertTrue("QuarantineInline", !"EdjeQuarantinePump".equals(threads[i].getName()));
+		}
+	}
+
+	@Test
+	public void testQuarantineOverflow() {
+		// a quarantine queue of a single event
+		System.setProperty("org.eclipse.edje.eventpump.quarantine.size", "1");
+		final DefaultPeripheralRegistry registry;
+		try {
+			registry = newQuarantineRegistry();
+		} finally {
+			System.clearProperty("org.eclipse.edje.eventpump.quarantine.size");
+		}
+		FixedLengthFIFOQueue<RegistrationEvent<?>> queue = new FixedLengthFIFOQueue<>(10);
+		Pump<RegistrationEvent<?>> pump = new Pump<RegistrationEvent<?>>(queue, Thread.NORM_PRIORITY, null) {
+			@Override
+			public void execute(RegistrationEvent<?> data) {
+				registry.executeEvent(this, data);
+			}
+		};
+		registry.start(pump);
+
+		RecordingListener<UART> slow = new RecordingListener<UART>() {
+			@Override
+			public void peripheralRegistered(RegistrationEvent<UART> event) {
+				super.peripheralRegistered(event);
+				SynchroSupport.sleep(200);
+			}
+		};
+		registry.addRegistrationListener(slow, UART.class);
+		UART[] uarts = new UART[6];
+		for (int i = 0; i < uarts.length; i++) {
+			uarts[i] = new UART("com" + i, new HashMap<String, String>());
+		}
+		try {
+			// quarantined by the first event, then overflowed by the next ones
+			for (int i = 0; i < uarts.length - 1; i++) {
+				queue.add(registry.register(UART.class, uarts[i], true, false));
+			}
+			Assert.assertTrue("OverflowDrain", registry.drain(10000));
+			long dropped = registry.getQuarantineDropCount();
+			Assert.assertTrue("OverflowDropped", dropped > 0);
+			Assert.assertTrue("OverflowNotified", slow.getEvents().length + dropped == uarts.length - 1);
+
+			// removed and added again: out of the quarantine
+			registry.removeRegistrationListener(slow);
+			registry.addRegistrationListener(slow, UART.class);
+			queue.add(registry.register(UART.class, uarts[uarts.length - 1], true, false));
+			Assert.assertTrue("ReleasedDrain", registry.drain(10000));
+			Thread[] threads = slow.getThreads();
+			Assert.assertTrue("Released", !"EdjeQuarantinePump".equals(threads[threads.length - 1].getName()));
+			Assert.assertTrue("ReleasedDropped", registry.getQuarantineDropCount() == dropped);
+		} finally {
+			Assert.assertTrue("OverflowStop", registry.stopPumps(10000));
+		}
+	}
+
+	@Test
+	public void testReplayFromSequence() {
+		// a registry of its own, which journals the last 4 events
+		System.setProperty("org.eclipse.edje.eventpump.journal.size", "4");
+		final DefaultPeripheralRegistry registry;
+		try {
+			registry = new DefaultPeripheralRegistry() {
+			};
+		} finally {
+			System.clearProperty("org.eclipse.edje.eventpump.journal.size");
+		}
+		registry.start((Pump<RegistrationEvent<?>>) null);
+		Pump<RegistrationEvent<?>> pump = new Pump<RegistrationEvent<?>>(new FixedLengthFIFOQueue<RegistrationEvent<?>>(1),
+				Thread.NORM_PRIORITY, null) {
+			@Override
+			public void execute(RegistrationEvent<?> data) {
+				registry.executeEvent(this, data);
+			}
+		};
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		UART uart3 = new UART("com3", new HashMap<String, String>());
+		// journaled, though nobody listens
+		registry.register(UART.class, uart1, true, false);
+		registry.register(UART.class, uart2, true, false);
+		registry.unregister(UART.class, uart1, true);
+
+		// the events from the second one are replayed on the calling thread
+		RecordingListener<UART> l = new RecordingListener<>();
+		registry.addRegistrationListener(l, UART.class, 2);
+		RegistrationEvent<UART>[] events = l.getEvents();
+		Assert.assertTrue("Replayed", events.length == 2);
+		checkEvent("Replayed2", events[0], uart2, true);
+		checkEvent("Replayed3", events[1], uart1, false);
+		Assert.assertTrue("ReplayedSequence",
+				events[0].getSequenceNumber() == 2 && events[1].getSequenceNumber() == 3);
+
+		// then the live events follow, once
+		RegistrationEvent<UART> event = registry.register(UART.class, uart3, true, false);
+		registry.executeEvent(pump, event);
+		events = l.getEvents();
+		Assert.assertTrue("Live", events.length == 3);
+		checkEvent("Live4", events[2], uart3, true);
+		Assert.assertTrue("LiveSequence", events[2].getSequenceNumber() == 4);
+
+		// nothing to replay from the next sequence number
+		RecordingListener<UART> next = new RecordingListener<>();
+		registry.addRegistrationListener(next, UART.class, 5);
+		Assert.assertTrue("ReplayedNone", next.getEvents().length == 0);
+
+		// the first events are not journaled anymore
+		registry.unregister(UART.class, uart2, true);
+		try {
+			registry.addRegistrationListener(new RecordingListener<UART>(), UART.class, 1);
+			Assert.assertTrue("ReplayTooOld", false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testTimestamps() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		RecordingListener<UART> synchronous = new SynchronousRecordingListener<>();
+		RecordingListener<UART> asynchronous = new RecordingListener<>();
+		PeripheralManager.addRegistrationListener(synchronous, UART.class);
+		PeripheralManager.addRegistrationListener(asynchronous, UART.class);
+
+		// hold the pump once it has taken the registration: the pending
+		// events cannot be coalesced
+		boolean held = asynchronous.hold();
+		PeripheralManager.register(UART.class, uart1);
+		if (held) {
+			asynchronous.awaitHeld();
+		}
+		PeripheralManager.unregister(uart1);
+		asynchronous.release();
+		waitFlush();
+		RegistrationEvent<UART>[] events = asynchronous.getEvents();
+		Assert.assertTrue("TimedEvents", events.length == 2);
+		checkTimes("TimesRegistered", events[0]);
+		checkTimes("TimesUnregistered", events[1]);
+		Assert.assertTrue("TimesOrder", events[0].getEnqueueTime() <= events[1].getEnqueueTime());
+		checkTimes("TimesSynchronous", synchronous.getEvents()[0]);
+
+		PeripheralManager.removeRegistrationListener(synchronous);
+		PeripheralManager.removeRegistrationListener(asynchronous);
+	}
+
+	private static void checkTimes(String message, RegistrationEvent<?> event) {
+		Assert.assertTrue(message, event.getEnqueueTime() != 0 && event.getEnqueueTime() <= event.getDispatchTime());
+	}
+
+	/**
+	 * Creates a registry which quarantines the listeners slower than 50ms.
+	 */
+	private static DefaultPeripheralRegistry newQuarantineRegistry() {
+		System.setProperty("org.eclipse.edje.eventpump.quarantine.threshold", "50");
+		try {
+			return new DefaultPeripheralRegistry() {
+			};
+		} finally {
+			System.clearProperty("org.eclipse.edje.eventpump.quarantine.threshold");
+		}
+	}
+
+	private static void checkOnce(String message, RegistrationEvent<UART>[] events, UART[] expected) {
+		Assert.assertTrue(message, events.length == expected.length);
+		for (int i = 0; i < expected.length; i++) {
+			checkEvent(message, events[i], expected[i], true);
+		}
+	}
+
+	@Test
+	public void testSamePeripheralOrder() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		final UART uart2 = new UART("com2", new HashMap<String, String>());
+		final UsbPeripheral usb1 = new UsbPeripheral("usb1", new HashMap<String, String>());
+		RecordingListener<UsbPeripheral> usbListener = new RecordingListener<>();
+		RecordingListener<UART> l = new RecordingListener<>();
+		PeripheralManager.register(UART.class, uart1);
+		PeripheralManager.register(UART.class, uart2);
+		PeripheralManager.addRegistrationListener(usbListener, UsbPeripheral.class);
+		PeripheralManager.addRegistrationListener(l, UART.class);
+
+		// with priority lanes (the unregistrations first by default), the
+		// registration of uart1 must not overtake its pending unregistration,
+		// whatever the lanes weights
+		usbListener.hold();
+		PeripheralManager.register(UsbPeripheral.class, usb1);
+		usbListener.awaitHeld();
+		PeripheralManager.unregister(uart2);
+		PeripheralManager.unregister(uart1);
+		PeripheralManager.register(UART.class, uart1);
+		usbListener.release();
+		waitFlush();
+
+		RegistrationEvent<UART>[] events = l.getEvents();
+		long lastSequence = 0;
+		for (RegistrationEvent<UART> event : events) {
+			if (event.getPeripheral() == uart1) {
+				Assert.assertTrue("SamePeripheralOrder", event.getSequenceNumber() > lastSequence);
+				lastSequence = event.getSequenceNumber();
+			}
+		}
+
+		PeripheralManager.removeRegistrationListener(usbListener);
+		PeripheralManager.removeRegistrationListener(l);
+		PeripheralManager.unregister(uart1);
+		PeripheralManager.unregister(usb1);
+	}
+
+	@Test
+	public void testStopRestart() {
+		final UART uart1 = new UART("com1", new HashMap<String, String>());
+		RecordingListener<UART> l = new RecordingListener<>();
+		boolean inline = Boolean.getBoolean("org.eclipse.edje.eventpump.inline");
+		int staticCount = countStatic();
+
+		Assert.assertTrue("Stop", PeripheralManager.stopEvents(10000));
+		try {
+			PeripheralManager.addRegistrationListener(l, UART.class);
+			PeripheralManager.register(UART.class, uart1);
+			SynchroSupport.sleep(100);
+			// stopped: the event is pending, unless notified inline
+			Assert.assertEquals("Stopped", inline ? 1 : 0, l.getEvents().length);
+		} finally {
+			PeripheralManager.restartEvents();
+		}
+		waitFlush();
+		RegistrationEvent<UART>[] events = l.getEvents();
+		Assert.assertEquals("Restarted", 1, events.length);
+		checkEvent("RestartedEvent", events[0], uart1, true);
+		// the static peripherals are not registered again
+		Assert.assertEquals("StaticOnce", staticCount, countStatic());
+
+		PeripheralManager.unregister(uart1);
+		waitFlush();
+		Assert.assertEquals("RestartedUnregistered", 2, l.getEvents().length);
+		PeripheralManager.removeRegistrationListener(l);
+	}
+
+	/**
+	 * Counts the static peripheral registered by the test registry.
+	 */
+	private static int countStatic() {
+		int count = 0;
+		for (Iterator<Peripheral> it = PeripheralManager.list(Peripheral.class); it.hasNext();) {
+			if ("test".equals(it.next().getName())) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	private static <P extends Peripheral> void checkEvent(String message, RegistrationEvent<P> event, P peripheral,
+			boolean registration) {
+		Assert.assertTrue(message, event.getPeripheral() == peripheral && event.isRegistration() == registration);
+	}
+
 	private static void waitFlush() {
-		// There is currently no callSerially to ensure the Pump is flushed
-		// Consider it is flushed after a 1s delay
-		SynchroSupport.sleep(1000);
+		Assert.assertTrue("waitFlush", PeripheralManager.drainEvents(10000));
+	}
+
+	/**
+	 * Records the events it is notified of. It may hold the thread notifying
+	 * it, so that the following events are pending.
+	 */
+	private static class RecordingListener<P extends Peripheral> implements RegistrationListener<P> {
+
+		private final ArrayList<RegistrationEvent<P>> events = new ArrayList<>();
+
+		private final ArrayList<Thread> threads = new ArrayList<>();
+
+		private boolean hold;
+
+		private boolean held;
+
+		/**
+		 * Holds the thread which notifies the next event, until
+		 * {@link #release()}.
+		 *
+		 * @return false if the listeners are notified inline: the registering
+		 *         thread cannot be held
+		 */
+		synchronized boolean hold() {
+			if (Boolean.getBoolean("org.eclipse.edje.eventpump.inline")) {
+				return false;
+			}
+			hold = true;
+			return true;
+		}
+
+		synchronized void awaitHeld() {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (hold && !held) {
+				long remaining = deadline - System.currentTimeMillis();
+				Assert.assertTrue("awaitHeld", remaining > 0);
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					throw new AssertionError();
+				}
+			}
+		}
+
+		synchronized void release() {
+			hold = false;
+			notifyAll();
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized RegistrationEvent<P>[] getEvents() {
+			return events.toArray(new RegistrationEvent[events.size()]);
+		}
+
+		synchronized Thread[] getThreads() {
+			return threads.toArray(new Thread[threads.size()]);
+		}
+
+		@Override
+		public void peripheralRegistered(RegistrationEvent<P> event) {
+			record(event);
+		}
+
+		@Override
+		public void peripheralUnregistered(RegistrationEvent<P> event) {
+			record(event);
+		}
+
+		private synchronized void record(RegistrationEvent<P> event) {
+			events.add(event);
+			threads.add(Thread.currentThread());
+			if (hold) {
+				held = true;
+				notifyAll();
+				while (hold) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				held = false;
+			}
+		}
+	}
+
+	private static class SynchronousRecordingListener<P extends Peripheral> extends RecordingListener<P>
+			implements SynchronousRegistrationListener<P> {
 	}
-}
\ No newline at end of file
+}
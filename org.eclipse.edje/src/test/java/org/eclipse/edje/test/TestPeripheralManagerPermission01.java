@@ -13,14 +13,21 @@
 package org.eclipse.edje.test;
 
 import java.security.Permission;
+import java.security.PermissionCollection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
+import org.eclipse.edje.AccessAudit;
+import org.eclipse.edje.AccessDecision;
+import org.eclipse.edje.Authorization;
+import org.eclipse.edje.DefaultPeripheralRegistry;
 import org.eclipse.edje.Peripheral;
 import org.eclipse.edje.PeripheralManager;
 import org.eclipse.edje.PeripheralManagerPermission;
+import org.eclipse.edje.PermissionsAuthorizationPolicy;
 import org.eclipse.edje.RegistrationEvent;
 import org.eclipse.edje.RegistrationListener;
 import org.eclipse.edje.test.peripherals.UART;
@@ -146,6 +153,243 @@ public class TestPeripheralManagerPermission01 {
 		checkNotInList(UART.class, uart1);
 	}
 
+	@Test
+	public void testAuthorizationPolicy() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		checkNotInList(UART.class, uart1);
+
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("name=com1,class=org.eclipse.edje.test.peripherals.UART",
+						PeripheralManagerPermission.READ_MODIFY),
+				new PeripheralManagerPermission("name=com2", PeripheralManagerPermission.MODIFY),
+				new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			checkRegister(UART.class, uart1, true);
+			checkRegister(UART.class, uart2, true);
+			checkInList(UART.class, uart1);
+			// cached decision
+			checkInList(UART.class, uart1);
+			checkNotInList(UART.class, uart2);
+			checkUnregister(uart1, true);
+			checkUnregister(uart2, true);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+		checkNotInList(UART.class, uart1);
+	}
+
+	@Test
+	public void testClassReadDecision() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+
+		// all the peripherals of the class are readable
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("class=org.eclipse.edje.test.peripherals.UART",
+						PeripheralManagerPermission.READ),
+				new PeripheralManagerPermission("name=*", PeripheralManagerPermission.MODIFY),
+				new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			checkRegister(UART.class, uart1, true);
+			checkRegister(UART.class, uart2, true);
+			checkInList(UART.class, uart1);
+			checkInList(UART.class, uart2);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+
+		// none of the peripherals of the class is readable
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("name=*", PeripheralManagerPermission.MODIFY),
+				new PeripheralManagerPermission("class=org.eclipse.edje.Peripheral", PeripheralManagerPermission.READ),
+				new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			checkNotInList(UART.class, uart1);
+			checkNotInList(UART.class, uart2);
+			checkUnregister(uart1, true);
+			checkUnregister(uart2, true);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testOverriddenCheckRead() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("class=org.eclipse.edje.test.peripherals.UART",
+						PeripheralManagerPermission.READ),
+				new RuntimePermission("setAuthorizationPolicy") }));
+		try {
+			ReadCheckingRegistry registry = new ReadCheckingRegistry("com2");
+			TestRegistrationListener<UART> listener1 = new TestRegistrationListener<>(uart1);
+			TestRegistrationListener<UART> listener2 = new TestRegistrationListener<>(uart2);
+			registry.addRegistrationListener(listener1, UART.class);
+			registry.addRegistrationListener(listener2, UART.class);
+			RegistrationEvent<UART> event1 = registry.register(UART.class, uart1, true, false);
+			RegistrationEvent<UART> event2 = registry.register(UART.class, uart2, true, false);
+
+			// the class is readable, but the override is called for each peripheral
+			Iterator<UART> list = registry.list(UART.class);
+			Assert.assertTrue("List", list.hasNext() && list.next() == uart1 && !list.hasNext());
+			Assert.assertTrue("ListChecks", registry.reads == 2);
+
+			registry.executeEvent(null, event1);
+			registry.executeEvent(null, event2);
+			Assert.assertTrue("Notified", listener1.getEvent() == event1);
+			Assert.assertTrue("NotNotified", listener2.getEvent() == null);
+			Assert.assertTrue("NotifyChecks", registry.reads == 4);
+		} finally {
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testAccessAudit() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("name=com1", PeripheralManagerPermission.READ),
+				new PeripheralManagerPermission("name=*", PeripheralManagerPermission.MODIFY),
+				new RuntimePermission("setAuthorizationPolicy"), new RuntimePermission("setAuthorizationAudit") }));
+		AccessAudit audit = new AccessAudit(2, true);
+		try {
+			checkRegister(UART.class, uart1, true);
+			checkRegister(UART.class, uart2, true);
+			Authorization.setAudit(audit);
+			AccessDecision[] decisions = new AccessDecision[4];
+			checkNotInList(UART.class, uart2);
+			// only the read of com2 is denied: the class probe is not recorded
+			Assert.assertTrue("Drain", audit.drain(decisions) == 1);
+			Assert.assertTrue("Denied", !decisions[0].isGranted());
+			Assert.assertTrue("Permission", decisions[0].getPermission()
+					.equals(new PeripheralManagerPermission(UART.class, uart2, PeripheralManagerPermission.READ)));
+			Assert.assertTrue("Subject", Thread.currentThread().getName().equals(decisions[0].getSubject()));
+			Assert.assertTrue("Drained", audit.drain(decisions) == 0);
+
+			// overwritten before being drained
+			checkNotInList(UART.class, uart2);
+			checkNotInList(UART.class, uart2);
+			checkNotInList(UART.class, uart2);
+			Assert.assertTrue("Overwritten", audit.drain(decisions) == 2);
+			Assert.assertTrue("Lost", audit.getLostCount() == 1);
+		} finally {
+			Authorization.setAudit(null);
+			checkUnregister(uart1, true);
+			checkUnregister(uart2, true);
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testAccessAuditListing() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		Authorization.setPolicy(new PermissionsAuthorizationPolicy(new Permission[] {
+				new PeripheralManagerPermission("name=com*", PeripheralManagerPermission.READ_MODIFY),
+				new RuntimePermission("setAuthorizationPolicy"), new RuntimePermission("setAuthorizationAudit") }));
+		AccessAudit audit = new AccessAudit(4, true);
+		try {
+			checkRegister(UART.class, uart1, true);
+			checkRegister(UART.class, uart2, true);
+			Authorization.setAudit(audit);
+			// the class is not granted but all its peripherals are readable
+			checkInList(UART.class, uart1);
+			checkInList(UART.class, uart2);
+			Assert.assertTrue("No denial", audit.drain(new AccessDecision[4]) == 0);
+			Assert.assertTrue("No loss", audit.getLostCount() == 0);
+		} finally {
+			Authorization.setAudit(null);
+			checkUnregister(uart1, true);
+			checkUnregister(uart2, true);
+			Authorization.setPolicy(null);
+		}
+	}
+
+	@Test
+	public void testPermissionCollection() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		UART uart2 = new UART("com2", new HashMap<String, String>());
+		UART uart3 = new UART("tty3", new HashMap<String, String>());
+		PermissionCollection policy = new PeripheralManagerPermission("name=*", PeripheralManagerPermission.READ)
+				.newPermissionCollection();
+		// indexed by class, by name and in the wildcard bucket
+		policy.add(new PeripheralManagerPermission("name=com1,class=org.eclipse.edje.test.peripherals.UART",
+				PeripheralManagerPermission.READ_MODIFY));
+		policy.add(new PeripheralManagerPermission("name=com2,class=*", PeripheralManagerPermission.READ));
+		policy.add(new PeripheralManagerPermission("name=tty*", PeripheralManagerPermission.MODIFY));
+
+		Assert.assertTrue("Class1",
+				policy.implies(new PeripheralManagerPermission(UART.class, uart1, PeripheralManagerPermission.MODIFY)));
+		Assert.assertTrue("Name2",
+				policy.implies(new PeripheralManagerPermission(UART.class, uart2, PeripheralManagerPermission.READ)));
+		Assert.assertTrue("Name2Modify", !policy
+				.implies(new PeripheralManagerPermission(UART.class, uart2, PeripheralManagerPermission.MODIFY)));
+		Assert.assertTrue("Wildcard3",
+				policy.implies(new PeripheralManagerPermission(UART.class, uart3, PeripheralManagerPermission.MODIFY)));
+		Assert.assertTrue("Wildcard3Read",
+				!policy.implies(new PeripheralManagerPermission(UART.class, uart3, PeripheralManagerPermission.READ)));
+		Assert.assertTrue("OtherClass", !policy
+				.implies(new PeripheralManagerPermission(Peripheral.class, uart1, PeripheralManagerPermission.READ)));
+		Assert.assertTrue("Elements", Collections.list(policy.elements()).size() == 3);
+	}
+
+	@Test
+	public void testSpecParsing() {
+		UART uart1 = new UART("com1", new HashMap<String, String>());
+		PeripheralManagerPermission request = new PeripheralManagerPermission(UART.class, uart1,
+				PeripheralManagerPermission.READ);
+		Assert.assertTrue("Blanks", new PeripheralManagerPermission(
+				" name = com1 ,, class= org.eclipse.edje.test.peripherals.UART ,", PeripheralManagerPermission.READ)
+						.implies(request));
+		Assert.assertTrue("LastWins",
+				new PeripheralManagerPermission("name=com2,name=com1", PeripheralManagerPermission.READ)
+						.implies(request));
+		Assert.assertTrue("Empty", new PeripheralManagerPermission("", PeripheralManagerPermission.READ)
+				.implies(request));
+		checkBadSpec("name");
+		checkBadSpec("name=");
+		checkBadSpec("name=com1=com2");
+		checkBadSpec("name=com1, =");
+	}
+
+	private void checkBadSpec(String spec) {
+		try {
+			new PeripheralManagerPermission(spec, PeripheralManagerPermission.READ);
+			Assert.assertTrue("BadSpec " + spec, false);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testConstraintPatterns() {
+		checkPattern("com1", "com1", true);
+		checkPattern("com1", "com2", false);
+		checkPattern("*", "com1", true);
+		checkPattern("co*", "com1", true);
+		checkPattern("*m1", "com1", true);
+		checkPattern("c*1", "com1", true);
+		checkPattern("com*m1", "com1", false);
+		checkPattern("*om*", "com1", true);
+		checkPattern("*x*", "com1", false);
+		checkPattern("c*m*1", "com1", true);
+		checkPattern("c*m*2", "com1", false);
+		checkPattern("*o*1", "com1", true);
+		checkPattern("c*o*m*", "com1", true);
+		checkPattern("c*1*1", "com1", false);
+	}
+
+	private static void checkPattern(String pattern, String name, boolean expected) {
+		PeripheralManagerPermission grant = new PeripheralManagerPermission("name=" + pattern,
+				PeripheralManagerPermission.READ);
+		PeripheralManagerPermission requested = new PeripheralManagerPermission(UART.class,
+				new UART(name, new HashMap<String, String>()), PeripheralManagerPermission.READ);
+		Assert.assertTrue("Pattern-" + pattern + "-" + name, grant.implies(requested) == expected);
+	}
+
 	public static <D extends Peripheral> void checkRegisterUnregister(Class<D> c, D peripheral) {
 		checkRegister(c, peripheral, true);
 		checkInList(c, peripheral);
@@ -206,6 +450,29 @@ public class TestPeripheralManagerPermission01 {
 		Assert.assertTrue("checkNotInList", true);
 	}
 
+	/**
+	 * A registry denying the read access to a peripheral on top of the default
+	 * checks, and counting the read checks.
+	 */
+	static class ReadCheckingRegistry extends DefaultPeripheralRegistry {
+
+		private final String deniedName;
+		int reads;
+
+		ReadCheckingRegistry(String deniedName) {
+			this.deniedName = deniedName;
+		}
+
+		@Override
+		public <C extends Peripheral, P extends C> void checkRead(Class<C> peripheralType, P peripheral) {
+			reads++;
+			if (deniedName.equals(peripheral.getName())) {
+				throw new SecurityException();
+			}
+			super.checkRead(peripheralType, peripheral);
+		}
+	}
+
 	static class TestSecurityManager extends SecurityManager {
 
 		List<PeripheralManagerPermission> policy = new ArrayList<>();
@@ -57,6 +57,12 @@ public class TestPeripheralRegistry extends DefaultPeripheralRegistry {
 		}
 	}
 
+	@Override
+	protected boolean cachesReadChecks() {
+		// checkRead is not overridden
+		return true;
+	}
+
 	@Override
 	public void start(Pump<RegistrationEvent<?>> pump) {
 		super.start(pump);
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2016 IS2T S.A. Operating under the brand name MicroEJ(r).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Contributors:
+ *    {agent, MicroEJ} - initial API and implementation and/or initial documentation
+ *******************************************************************************/
+
+package org.eclipse.edje.test.connection.shared;
+
+import java.io.IOException;
+
+import org.eclipse.edje.io.Connection;
+import org.eclipse.edje.io.SharedConnectionFactory;
+
+public class ConnectionFactory implements SharedConnectionFactory {
+
+	public static int Instances;
+
+	public ConnectionFactory() {
+		++Instances;
+	}
+
+	@Override
+	public Connection open(String name) throws IOException {
+		return new Connection() {
+
+			@Override
+			public void close() throws IOException {
+
+			}
+		};
+	}
+
+}